@@ -2,6 +2,7 @@ package gridfs.client;
 
 import org.bson.types.ObjectId;
 
+import java.util.List;
 import java.util.Map;
 
 /**
@@ -10,24 +11,36 @@ import java.util.Map;
 public class GridFile {
 
     private ObjectId id;
+    private ObjectId chunksId;
     private long size;
     private long chunkSize;
     private long updateDate;
     private String md5;
+    private String sha256;
     private String filename;
     private Map<String, Object> metadata;
+    private GridFsCodec codec = GridFsCodec.NONE;
+    private List<String> blocks;
+    private long[] blockOffsets;
+    private byte[] inline;
 
     GridFile() {
     }
 
     GridFile(Builder builder) {
         this.id = builder.id;
+        this.chunksId = null == builder.chunksId ? builder.id : builder.chunksId;
         this.size = builder.size;
         this.chunkSize = builder.chunkSize;
         this.updateDate = builder.updateDate;
         this.md5 = builder.md5;
+        this.sha256 = builder.sha256;
         this.filename = builder.filename;
         this.metadata = builder.metadata;
+        this.codec = builder.codec;
+        this.blocks = builder.blocks;
+        this.blockOffsets = builder.blockOffsets;
+        this.inline = builder.inline;
     }
 
     public ObjectId id() {
@@ -50,6 +63,13 @@ public class GridFile {
         return md5;
     }
 
+    /**
+     * @return sha-256 computed on stream uploads, null for other files.
+     */
+    public String sha256() {
+        return sha256;
+    }
+
     public String filename() {
         return filename;
     }
@@ -58,6 +78,38 @@ public class GridFile {
         return metadata;
     }
 
+    /**
+     * @return files_id of the chunks the file reads, the id of another file when the chunks are shared.
+     */
+    ObjectId chunksId() {
+        return chunksId;
+    }
+
+    GridFsCodec codec() {
+        return codec;
+    }
+
+    /**
+     * @return hashes of the blocks the file is made of, null when the file is stored as chunks.
+     */
+    List<String> blocks() {
+        return blocks;
+    }
+
+    /**
+     * @return offset of each block in the file followed by the end of the last block.
+     */
+    long[] blockOffsets() {
+        return blockOffsets;
+    }
+
+    /**
+     * @return content stored in the files document, null when the file is stored as chunks or blocks.
+     */
+    byte[] inline() {
+        return inline;
+    }
+
     @Override
     public String toString() {
         return "GridFile{" +
@@ -66,6 +118,7 @@ public class GridFile {
                 ", chunkSize=" + chunkSize +
                 ", updateDate=" + updateDate +
                 ", md5='" + md5 + '\'' +
+                ", sha256='" + sha256 + '\'' +
                 ", filename='" + filename + '\'' +
                 ", metadata=" + metadata +
                 '}';
@@ -83,18 +136,29 @@ public class GridFile {
         }
 
         ObjectId id;
+        ObjectId chunksId;
         long size;
         long chunkSize;
         long updateDate;
         String md5;
+        String sha256;
         String filename;
         Map<String, Object> metadata;
+        GridFsCodec codec = GridFsCodec.NONE;
+        List<String> blocks;
+        long[] blockOffsets;
+        byte[] inline;
 
         public Builder id(ObjectId id) {
             this.id = id;
             return this;
         }
 
+        public Builder chunksId(ObjectId chunksId) {
+            this.chunksId = chunksId;
+            return this;
+        }
+
         public Builder size(long size) {
             this.size = size;
             return this;
@@ -115,6 +179,11 @@ public class GridFile {
             return this;
         }
 
+        public Builder sha256(String sha256) {
+            this.sha256 = sha256;
+            return this;
+        }
+
         public Builder filename(String filename) {
             this.filename = filename;
             return this;
@@ -125,6 +194,22 @@ public class GridFile {
             return this;
         }
 
+        public Builder codec(GridFsCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        public Builder blocks(List<String> blocks, long[] blockOffsets) {
+            this.blocks = blocks;
+            this.blockOffsets = blockOffsets;
+            return this;
+        }
+
+        public Builder inline(byte[] inline) {
+            this.inline = inline;
+            return this;
+        }
+
         public GridFile build() {
             return new GridFile(this);
         }
@@ -0,0 +1,112 @@
+package gridfs.client;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.client.MongoClients;
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.async.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
+
+/**
+ * @author siuming
+ */
+final class GridFileAsyncBucket {
+    private final GridFileAsyncGet get;
+    private final GridFileAsyncDelete delete;
+    private final GridFileAsyncRead read;
+    private final GridFileAsyncWrite write;
+    private final GridFileAsyncRWrite writeR;
+
+    GridFileAsyncBucket(MongoDatabase database, ReadConcern readConcern, WriteConcern writeConcern, String bucketName, int chunkSize, GridFsCodec codec, int batchBytes) {
+        MongoCollection<Document> filesCollection = getFilesCollection(database, bucketName);
+        MongoCollection<Document> chunkCollection = getChunkCollection(database, bucketName);
+        MongoCollection<Document> blockCollection = getBlockCollection(database, bucketName);
+        MongoCollection<Document> refCollection = getRefCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern);
+
+        MongoCollection<Document> filesReadCollection = filesCollection.withReadConcern(readConcern);
+        MongoCollection<Document> filesWriteCollection = filesCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> filesReadWriteCollection = filesReadCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> chunkReadCollection = chunkCollection.withReadConcern(readConcern);
+        MongoCollection<Document> chunkWriteCollection = chunkCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> chunkReadWriteCollection = chunkReadCollection.withWriteConcern(writeConcern);
+
+        this.get = new GridFileAsyncGet(filesReadCollection);
+        this.delete = new GridFileAsyncDelete(filesReadWriteCollection, chunkReadWriteCollection, blockCollection.withReadConcern(readConcern).withWriteConcern(writeConcern), refCollection);
+        this.read = new GridFileAsyncRead(get, chunkReadCollection, batchBytes);
+        this.write = new GridFileAsyncWrite(filesWriteCollection, chunkWriteCollection, chunkSize, codec, batchBytes);
+        this.writeR = new GridFileAsyncRWrite(get, chunkReadWriteCollection, refCollection, batchBytes);
+    }
+
+    CompletableFuture<GridFile> get(ObjectId id) {
+        return get.exec(id);
+    }
+
+    CompletableFuture<GridFile> get0(String md5) {
+        return get.exec0(md5);
+    }
+
+    CompletableFuture<Void> delete(ObjectId id) {
+        return delete.exec(id);
+    }
+
+    CompletableFuture<Void> delete0(String md5) {
+        return delete.exec0(md5);
+    }
+
+    CompletableFuture<byte[]> read(ObjectId id) {
+        return read.exec(id);
+    }
+
+    CompletableFuture<byte[]> readR(ObjectId id, long offset, long size) {
+        return read.execR(id, offset, size);
+    }
+
+    CompletableFuture<Void> read0(ObjectId id, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        return read.exec0(id, consumer);
+    }
+
+    CompletableFuture<Void> readR0(ObjectId id, long offset, long size, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        return read.execR0(id, offset, size, consumer);
+    }
+
+    CompletableFuture<ObjectId> write(String name, String md5, long size, Document metadata, byte[] data) {
+        ObjectId id = new ObjectId();
+        return write.exec(id, name, md5, size, metadata, data).thenApply(written -> id);
+    }
+
+    CompletableFuture<Void> writeR(ObjectId id, long offset, byte[] data) {
+        return writeR.exec(id, offset, data);
+    }
+
+    private static MongoCollection<Document> getFilesCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".files")
+                .withCodecRegistry(fromRegistries(database.getCodecRegistry(), MongoClients.getDefaultCodecRegistry()));
+    }
+
+    private static MongoCollection<Document> getBlockCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".blocks")
+                .withCodecRegistry(GridFileChunks.codecRegistry(MongoClients.getDefaultCodecRegistry()));
+    }
+
+    private static MongoCollection<Document> getRefCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".refs")
+                .withCodecRegistry(MongoClients.getDefaultCodecRegistry());
+    }
+
+    private static MongoCollection<Document> getChunkCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".chunks")
+                .withCodecRegistry(GridFileChunks.codecRegistry(MongoClients.getDefaultCodecRegistry()));
+    }
+}
@@ -0,0 +1,117 @@
+package gridfs.client;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.WriteModel;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author siuming
+ */
+final class GridFileAsyncDelete {
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final MongoCollection<Document> blockCollection;
+    private final MongoCollection<Document> refCollection;
+
+    GridFileAsyncDelete(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, MongoCollection<Document> blockCollection, MongoCollection<Document> refCollection) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.blockCollection = blockCollection;
+        this.refCollection = refCollection;
+    }
+
+    CompletableFuture<Void> exec(ObjectId id) {
+        CompletableFuture<Document> result = new CompletableFuture<>();
+        filesCollection.findOneAndDelete(Filters.eq("_id", id), GridFileCallbacks.complete(result));
+        return result.thenCompose(doc -> {
+            if (null == doc) {
+                // chunks left behind by a failed upload, unless other files still read them.
+                CompletableFuture<Document> sharing = new CompletableFuture<>();
+                filesCollection.find(Filters.eq("chunks_id", id)).first(GridFileCallbacks.complete(sharing));
+                return sharing.thenCompose(shared -> null == shared ? deleteChunks(id) : CompletableFuture.<Void>completedFuture(null));
+            }
+            return delete(doc);
+        });
+    }
+
+    CompletableFuture<Void> exec0(String md5) {
+        CompletableFuture<Document> result = new CompletableFuture<>();
+        filesCollection.findOneAndDelete(Filters.eq("md5", md5), GridFileCallbacks.complete(result));
+        return result.thenCompose(doc -> null == doc ? CompletableFuture.<Void>completedFuture(null) : delete(doc));
+    }
+
+    private CompletableFuture<Void> delete(Document fileDocument) {
+        if (null != fileDocument.get("data")) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ObjectId chunksId = null == fileDocument.getObjectId("chunks_id") ? fileDocument.getObjectId("_id") : fileDocument.getObjectId("chunks_id");
+        return releaseChunks(chunksId).thenCompose(shared -> shared ? CompletableFuture.<Void>completedFuture(null) : deleteChunks(chunksId))
+                .thenCompose(deleted -> releaseBlocks(fileDocument));
+    }
+
+    // same bookkeeping as GridFileChunkRefs.release.
+    private CompletableFuture<Boolean> releaseChunks(ObjectId chunksId) {
+        CompletableFuture<Document> result = new CompletableFuture<>();
+        refCollection.findOneAndUpdate(
+                Filters.and(Filters.eq("_id", chunksId), Filters.gt("refs", 0)),
+                new Document("$inc", new Document("refs", -1)),
+                GridFileCallbacks.complete(result)
+        );
+        return result.thenCompose(ref -> {
+            if (null == ref) {
+                return CompletableFuture.completedFuture(false);
+            }
+            if (ref.get("refs", Number.class).intValue() > 1) {
+                return CompletableFuture.completedFuture(true);
+            }
+            CompletableFuture<DeleteResult> removed = new CompletableFuture<>();
+            refCollection.deleteOne(Filters.and(Filters.eq("_id", chunksId), Filters.lte("refs", 0)), GridFileCallbacks.complete(removed));
+            return removed.thenApply(deleted -> true);
+        });
+    }
+
+    private CompletableFuture<Void> deleteChunks(ObjectId id) {
+        CompletableFuture<DeleteResult> result = new CompletableFuture<>();
+        chunkCollection.deleteMany(Filters.eq("files_id", id), GridFileCallbacks.complete(result));
+        return result.thenApply(deleted -> null);
+    }
+
+    // same bookkeeping as GridFileBlocks.releaseManifest.
+    @SuppressWarnings("unchecked")
+    private CompletableFuture<Void> releaseBlocks(Document fileDocument) {
+        List<Document> manifest = (List<Document>) fileDocument.get("blocks");
+        if (null == manifest || manifest.isEmpty()) {
+            return CompletableFuture.<Void>completedFuture(null);
+        }
+
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        for (Document block : manifest) {
+            refs.merge(block.getString("_id"), 1, Integer::sum);
+        }
+        List<WriteModel<Document>> requests = new ArrayList<>();
+        for (Map.Entry<String, Integer> ref : refs.entrySet()) {
+            requests.add(new UpdateOneModel<>(Filters.eq("_id", ref.getKey()), new Document("$inc", new Document("refs", -ref.getValue()))));
+        }
+
+        CompletableFuture<BulkWriteResult> released = new CompletableFuture<>();
+        blockCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false), GridFileCallbacks.complete(released));
+        return released.thenCompose(result -> {
+            CompletableFuture<DeleteResult> removed = new CompletableFuture<>();
+            blockCollection.deleteMany(Filters.and(Filters.in("_id", refs.keySet()), Filters.lte("refs", 0)), GridFileCallbacks.complete(removed));
+            return removed.thenApply(deleted -> null);
+        });
+    }
+}
@@ -0,0 +1,32 @@
+package gridfs.client;
+
+import com.mongodb.async.client.MongoCollection;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author siuming
+ */
+final class GridFileAsyncGet {
+    private final MongoCollection<Document> filesCollection;
+
+    GridFileAsyncGet(MongoCollection<Document> filesCollection) {
+        this.filesCollection = filesCollection;
+    }
+
+    CompletableFuture<GridFile> exec(ObjectId id) {
+        return find(new Document("_id", id));
+    }
+
+    CompletableFuture<GridFile> exec0(String md5) {
+        return find(new Document("md5", md5));
+    }
+
+    private CompletableFuture<GridFile> find(Document filter) {
+        CompletableFuture<Document> result = new CompletableFuture<>();
+        filesCollection.find(filter).first(GridFileCallbacks.complete(result));
+        return result.thenApply(gridFile -> null == gridFile ? null : GridFileGet.toGridFile(gridFile));
+    }
+}
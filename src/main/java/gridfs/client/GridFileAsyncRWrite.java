@@ -0,0 +1,151 @@
+package gridfs.client;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonBinary;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author siuming
+ */
+final class GridFileAsyncRWrite {
+
+    private final GridFileAsyncGet get;
+    private final MongoCollection<Document> chunkCollection;
+    private final MongoCollection<Document> refCollection;
+    private final int batchBytes;
+
+    GridFileAsyncRWrite(GridFileAsyncGet get, MongoCollection<Document> chunkCollection, MongoCollection<Document> refCollection, int batchBytes) {
+        this.get = get;
+        this.chunkCollection = chunkCollection;
+        this.refCollection = refCollection;
+        this.batchBytes = batchBytes;
+    }
+
+    CompletableFuture<Void> exec(ObjectId id, long offset, byte[] data) {
+        if (data.length <= 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<Document> ref = new CompletableFuture<>();
+        refCollection.find(Filters.and(Filters.eq("_id", id), Filters.gt("refs", 0))).first(GridFileCallbacks.complete(ref));
+        return ref.thenCombine(get.exec(id), (shared, gridFile) -> {
+            if (null != shared) {
+                throw new GridFsException(String.format("file[id=%s] shares its chunks, modify not supported.", id));
+            }
+            return gridFile;
+        }).thenCompose(gridFile -> {
+            if (null == gridFile) {
+                throw new GridFsException(String.format("file[id=%s] not found.", id));
+            }
+            if (null != gridFile.blocks()) {
+                throw new GridFsException(String.format("file[id=%s] is deduplicated, modify not supported.", id));
+            }
+            if (null != gridFile.inline()) {
+                throw new GridFsException(String.format("file[id=%s] is inlined, modify it with GridFsClient.", id));
+            }
+            if (!id.equals(gridFile.chunksId())) {
+                throw new GridFsException(String.format("file[id=%s] shares its chunks, modify not supported.", id));
+            }
+
+            long fileSize = gridFile.size();
+            if (offset < 0 || fileSize < offset + data.length) {
+                throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
+            }
+
+            int chunkSize = (int) gridFile.chunkSize();
+            int firstWriteNr = (int) (offset / chunkSize);
+            int lastWriteNr = (int) ((offset + data.length - 1) / chunkSize);
+
+            // only the edge chunks keep bytes outside the written range, both are fetched in one round trip.
+            List<Integer> partialNrs = new ArrayList<>();
+            for (int nr : new int[]{firstWriteNr, lastWriteNr}) {
+                if (isPartial(nr, chunkSize, fileSize, offset, data.length) && !partialNrs.contains(nr)) {
+                    partialNrs.add(nr);
+                }
+            }
+            return readChunks(gridFile, partialNrs).thenCompose(partialChunks -> writeChunks(gridFile, offset, data, firstWriteNr, lastWriteNr, partialChunks));
+        });
+    }
+
+    private CompletableFuture<Map<Integer, byte[]>> readChunks(GridFile gridFile, List<Integer> nrs) {
+        if (nrs.isEmpty()) {
+            return CompletableFuture.completedFuture(new HashMap<>());
+        }
+
+        CompletableFuture<List<GridFileChunk>> result = new CompletableFuture<>();
+        chunkCollection.find(Filters.and(Filters.eq("files_id", gridFile.id()), Filters.in("n", nrs)), GridFileChunk.class)
+                .into(new ArrayList<>(), GridFileCallbacks.complete(result));
+        return result.thenApply(fileChunks -> {
+            Map<Integer, byte[]> chunks = new HashMap<>();
+            for (GridFileChunk fileChunk : fileChunks) {
+                chunks.put(fileChunk.n, GridFileChunks.data(fileChunk, gridFile));
+            }
+            return chunks;
+        });
+    }
+
+    private CompletableFuture<Void> writeChunks(GridFile gridFile, long offset, byte[] data, int firstWriteNr, int lastWriteNr, Map<Integer, byte[]> partialChunks) {
+        ObjectId id = gridFile.id();
+        int chunkSize = (int) gridFile.chunkSize();
+        long fileSize = gridFile.size();
+        List<List<WriteModel<Document>>> batches = new ArrayList<>();
+        List<WriteModel<Document>> batch = new ArrayList<>();
+        int batchedBytes = 0;
+        for (int nr = firstWriteNr; nr <= lastWriteNr; nr++) {
+            long chunkOffset = (long) nr * chunkSize;
+            int chunkLength = (int) Math.min(chunkSize, fileSize - chunkOffset);
+            long writeStart = Math.max(offset, chunkOffset);
+            long writeEnd = Math.min(offset + data.length, chunkOffset + chunkLength);
+
+            byte[] chunk = new byte[chunkLength];
+            byte[] previous = partialChunks.get(nr);
+            if (null != previous) {
+                System.arraycopy(previous, 0, chunk, 0, Math.min(previous.length, chunkLength));
+            }
+            System.arraycopy(data, (int) (writeStart - offset), chunk, (int) (writeStart - chunkOffset), (int) (writeEnd - writeStart));
+
+            if (!batch.isEmpty() && batchedBytes + chunkLength > batchBytes) {
+                batches.add(batch);
+                batch = new ArrayList<>();
+                batchedBytes = 0;
+            }
+            batch.add(new ReplaceOneModel<>(
+                    Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
+                    new Document("files_id", id).append("n", nr).append("data", new BsonBinary(gridFile.codec().encode(chunk))),
+                    new UpdateOptions().upsert(true)
+            ));
+            batchedBytes = batchedBytes + chunkLength;
+        }
+        batches.add(batch);
+        return writeBatches(batches, 0);
+    }
+
+    private CompletableFuture<Void> writeBatches(List<List<WriteModel<Document>>> batches, int index) {
+        if (index >= batches.size()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        CompletableFuture<BulkWriteResult> result = new CompletableFuture<>();
+        chunkCollection.bulkWrite(batches.get(index), new BulkWriteOptions().ordered(false), GridFileCallbacks.complete(result));
+        return result.thenCompose(written -> writeBatches(batches, index + 1));
+    }
+
+    private static boolean isPartial(int nr, int chunkSize, long fileSize, long offset, int length) {
+        long chunkOffset = (long) nr * chunkSize;
+        long chunkEnd = Math.min(chunkOffset + chunkSize, fileSize);
+        return offset > chunkOffset || offset + length < chunkEnd;
+    }
+}
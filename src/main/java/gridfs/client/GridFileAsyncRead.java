@@ -0,0 +1,216 @@
+package gridfs.client;
+
+import com.mongodb.async.AsyncBatchCursor;
+import com.mongodb.async.client.MongoCollection;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * streams chunks of a file range to a consumer, the next cursor batch is only requested once the consumer
+ * has completed every chunk of the current one.
+ *
+ * @author siuming
+ */
+final class GridFileAsyncRead {
+    private static final CompletableFuture<Void> CONSUMED = CompletableFuture.completedFuture(null);
+
+    private final GridFileAsyncGet get;
+    private final MongoCollection<Document> chunkCollection;
+    private final int batchBytes;
+
+    GridFileAsyncRead(GridFileAsyncGet get, MongoCollection<Document> chunkCollection, int batchBytes) {
+        this.get = get;
+        this.chunkCollection = chunkCollection;
+        this.batchBytes = batchBytes;
+    }
+
+    CompletableFuture<byte[]> exec(ObjectId id) {
+        return get.exec(id).thenCompose(gridFile -> {
+            if (null == gridFile) {
+                throw new GridFsException(String.format("file[id=%s] not found.", id));
+            }
+            return read(gridFile, 0, gridFile.size());
+        });
+    }
+
+    CompletableFuture<byte[]> execR(ObjectId id, long offset, long size) {
+        if (size == 0) {
+            return CompletableFuture.completedFuture(new byte[0]);
+        }
+        return get.exec(id).thenCompose(gridFile -> {
+            checkRange(id, gridFile, offset, size);
+            return read(gridFile, offset, size);
+        });
+    }
+
+    CompletableFuture<Void> exec0(ObjectId id, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        return get.exec(id).thenCompose(gridFile -> {
+            if (null == gridFile) {
+                throw new GridFsException(String.format("file[id=%s] not found.", id));
+            }
+            return stream(gridFile, 0, gridFile.size(), consumer);
+        });
+    }
+
+    CompletableFuture<Void> execR0(ObjectId id, long offset, long size, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        if (size == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        return get.exec(id).thenCompose(gridFile -> {
+            checkRange(id, gridFile, offset, size);
+            return stream(gridFile, offset, size, consumer);
+        });
+    }
+
+    private void checkRange(ObjectId id, GridFile gridFile, long offset, long size) {
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+        long fileSize = gridFile.size();
+        if (offset < 0 || size < 0 || fileSize < offset + size) {
+            throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
+        }
+    }
+
+    private void checkChunked(GridFile gridFile) {
+        if (null != gridFile.blocks()) {
+            throw new GridFsException(String.format("file[id=%s] is deduplicated, read it with GridFsClient.", gridFile.id()));
+        }
+    }
+
+    private CompletableFuture<byte[]> read(GridFile gridFile, long offset, long size) {
+        checkChunked(gridFile);
+        if (size > Integer.MAX_VALUE) {
+            throw new GridFsException(String.format("size=%s too large.", size));
+        }
+
+        byte[] fileContent = new byte[(int) size];
+        ByteBuffer target = ByteBuffer.wrap(fileContent);
+        return stream(gridFile, offset, size, chunk -> {
+            target.put(chunk);
+            return CONSUMED;
+        }).thenApply(consumed -> fileContent);
+    }
+
+    private CompletableFuture<Void> stream(GridFile gridFile, long offset, long size, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        checkChunked(gridFile);
+        if (size == 0) {
+            return CompletableFuture.completedFuture(null);
+        }
+        if (null != gridFile.inline()) {
+            return consumer.apply(ByteBuffer.wrap(gridFile.inline(), (int) offset, (int) size).slice().asReadOnlyBuffer()).thenApply(consumed -> (Void) null).toCompletableFuture();
+        }
+
+        ObjectId id = gridFile.chunksId();
+        int chunkSize = (int) gridFile.chunkSize();
+        int firstReadNr = (int) (offset / chunkSize);
+        int lastReadNr = (int) ((offset + size - 1) / chunkSize);
+        int batchSize = Math.min(lastReadNr - firstReadNr + 1, Math.max(1, batchBytes / chunkSize));
+
+        CompletableFuture<AsyncBatchCursor<GridFileChunk>> cursor = new CompletableFuture<>();
+        chunkCollection.find(new Document("files_id", id).append("n", new Document("$gte", firstReadNr).append("$lte", lastReadNr)), GridFileChunk.class)
+                .sort(new Document("n", 1))
+                .batchSize(batchSize)
+                .batchCursor(GridFileCallbacks.complete(cursor));
+        return cursor.thenCompose(batchCursor -> new ChunkStream(gridFile, offset, size, batchCursor, consumer).start());
+    }
+
+    private static class ChunkStream {
+        final GridFile gridFile;
+        final ObjectId id;
+        final long size;
+        final int firstReadNr;
+        final int firstReadOffset;
+        final int lastReadNr;
+        final int lastReadSize;
+        final AsyncBatchCursor<GridFileChunk> cursor;
+        final Function<ByteBuffer, ? extends CompletionStage<?>> consumer;
+        final CompletableFuture<Void> result = new CompletableFuture<>();
+
+        int readNr;
+        long writeBytes;
+
+        private ChunkStream(GridFile gridFile, long offset, long size, AsyncBatchCursor<GridFileChunk> cursor, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+            int chunkSize = (int) gridFile.chunkSize();
+            this.gridFile = gridFile;
+            this.id = gridFile.id();
+            this.size = size;
+            this.firstReadNr = (int) (offset / chunkSize);
+            this.firstReadOffset = (int) (offset % chunkSize);
+            this.lastReadNr = (int) ((offset + size - 1) / chunkSize);
+            this.lastReadSize = (int) ((offset + size - 1) % chunkSize) + 1;
+            this.cursor = cursor;
+            this.consumer = consumer;
+            this.readNr = firstReadNr;
+        }
+
+        CompletableFuture<Void> start() {
+            next();
+            return result;
+        }
+
+        private void next() {
+            cursor.next((chunks, t) -> {
+                if (null != t) {
+                    finish(t);
+                    return;
+                }
+                if (null == chunks) {
+                    finish(null);
+                    return;
+                }
+                consume(chunks).whenComplete((consumed, e) -> {
+                    if (null != e) {
+                        finish(e);
+                    } else if (readNr > lastReadNr) {
+                        finish(null);
+                    } else {
+                        next();
+                    }
+                });
+            });
+        }
+
+        private CompletionStage<?> consume(List<GridFileChunk> chunks) {
+            CompletionStage<?> consumed = CONSUMED;
+            for (GridFileChunk fileChunk : chunks) {
+                consumed = consumed.thenCompose(previous -> consume(fileChunk));
+            }
+            return consumed;
+        }
+
+        private CompletionStage<?> consume(GridFileChunk fileChunk) {
+            if (fileChunk.n != readNr) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", id));
+            }
+
+            byte[] chunk = GridFileChunks.data(fileChunk, gridFile);
+            int readOffset = readNr == firstReadNr ? firstReadOffset : 0;
+            int readSize = (readNr == lastReadNr ? lastReadSize : chunk.length) - readOffset;
+            if (readOffset + readSize > chunk.length) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", id));
+            }
+
+            readNr++;
+            writeBytes = writeBytes + readSize;
+            return consumer.apply(ByteBuffer.wrap(chunk, readOffset, readSize).slice());
+        }
+
+        private void finish(Throwable t) {
+            cursor.close();
+            if (null != t) {
+                result.completeExceptionally(t);
+            } else if (writeBytes != size) {
+                result.completeExceptionally(new GridFsException(String.format("file[id=%s] not ready.", id)));
+            } else {
+                result.complete(null);
+            }
+        }
+    }
+}
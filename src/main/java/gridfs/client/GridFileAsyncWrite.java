@@ -0,0 +1,110 @@
+package gridfs.client;
+
+import com.mongodb.async.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import com.mongodb.client.result.DeleteResult;
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * @author siuming
+ */
+final class GridFileAsyncWrite {
+
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+
+    GridFileAsyncWrite(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+    }
+
+    CompletableFuture<Void> exec(ObjectId id, String name, String md5, long size, Document metadata, byte[] data) {
+        if (data.length > size) {
+            return GridFileCallbacks.failed(new GridFsException(String.format("file overflow[size=%s, data=%s].", size, data.length)));
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        writeChunks(id, data, 0).whenComplete((written, t) -> {
+            if (null == t) {
+                writeFile(id, name, md5, size, metadata).whenComplete((fileWritten, e) -> complete(result, e));
+                return;
+            }
+            CompletableFuture<DeleteResult> deleted = new CompletableFuture<>();
+            chunkCollection.deleteMany(Filters.eq("files_id", id), GridFileCallbacks.complete(deleted));
+            deleted.whenComplete((cleaned, e) -> result.completeExceptionally(t));
+        });
+        return result;
+    }
+
+    private CompletableFuture<Void> writeFile(ObjectId id, String name, String md5, long size, Document metadata) {
+        Document fileDocument = new Document("_id", id)
+                .append("length", size)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", md5)
+                .append("filename", name);
+        if (null != codec.codecName()) {
+            fileDocument.append("codec", codec.codecName());
+        }
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        filesCollection.insertOne(fileDocument, GridFileCallbacks.complete(result));
+        return result;
+    }
+
+    /**
+     * insert the batch starting at chunk firstNr, the next batch is built once it is acknowledged.
+     */
+    private CompletableFuture<Void> writeChunks(ObjectId id, byte[] data, int firstNr) {
+        int chunkNr = (data.length % chunkSize == 0) ? data.length / chunkSize : (data.length / chunkSize) + 1;
+        if (firstNr >= chunkNr) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        List<Document> batch = new ArrayList<>();
+        int batchedBytes = 0;
+        int nr = firstNr;
+        for (; nr < chunkNr; nr++) {
+            int offset = nr * chunkSize;
+            int length = Math.min(chunkSize, data.length - offset);
+            if (!batch.isEmpty() && batchedBytes + length > batchBytes) {
+                break;
+            }
+
+            byte[] chunk = new byte[length];
+            System.arraycopy(data, offset, chunk, 0, length);
+            batch.add(new Document("files_id", id).append("n", nr).append("data", new BsonBinary(codec.encode(chunk))));
+            batchedBytes = batchedBytes + length;
+        }
+
+        int nextNr = nr;
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        chunkCollection.insertMany(batch, new InsertManyOptions().ordered(false), GridFileCallbacks.complete(result));
+        return result.thenCompose(written -> writeChunks(id, data, nextNr));
+    }
+
+    private static void complete(CompletableFuture<Void> result, Throwable t) {
+        if (null != t) {
+            result.completeExceptionally(t);
+        } else {
+            result.complete(null);
+        }
+    }
+}
@@ -0,0 +1,134 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonBinary;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * content addressed blocks shared between deduplicated files, a block is removed once no file refers to it.
+ *
+ * @author siuming
+ */
+final class GridFileBlocks {
+    private final MongoCollection<Document> blockCollection;
+
+    GridFileBlocks(MongoCollection<Document> blockCollection) {
+        this.blockCollection = blockCollection;
+    }
+
+    /**
+     * @param hashes
+     * @return data of the stored blocks by hash.
+     */
+    Map<String, byte[]> read(Collection<String> hashes) {
+        Map<String, byte[]> blocks = new HashMap<>();
+        if (hashes.isEmpty()) {
+            return blocks;
+        }
+
+        for (Document block : blockCollection.find(Filters.in("_id", hashes))) {
+            blocks.put(block.getString("_id"), block.get("data", BsonBinary.class).getData());
+        }
+        return blocks;
+    }
+
+    /**
+     * add references to blocks, only blocks not stored yet are sent with their data.
+     *
+     * @param blocks data by hash.
+     * @param refs   references added by hash.
+     */
+    void reference(Map<String, byte[]> blocks, Map<String, Integer> refs) {
+        Set<String> stored = new HashSet<>();
+        for (Document block : blockCollection.find(Filters.in("_id", refs.keySet())).projection(new Document("_id", 1))) {
+            stored.add(block.getString("_id"));
+        }
+
+        List<WriteModel<Document>> requests = new ArrayList<>();
+        for (Map.Entry<String, Integer> ref : refs.entrySet()) {
+            if (stored.contains(ref.getKey())) {
+                requests.add(new UpdateOneModel<>(Filters.eq("_id", ref.getKey()), new Document("$inc", new Document("refs", ref.getValue()))));
+            }
+        }
+        long matched = requests.isEmpty() ? 0 : blockCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false)).getMatchedCount();
+
+        // a stored block released to zero since the lookup is gone, it is written again with the new blocks.
+        Set<String> missing = new HashSet<>(refs.keySet());
+        missing.removeAll(stored);
+        if (matched < requests.size()) {
+            Set<String> released = new HashSet<>(stored);
+            for (Document block : blockCollection.find(Filters.in("_id", stored)).projection(new Document("_id", 1))) {
+                released.remove(block.getString("_id"));
+            }
+            missing.addAll(released);
+        }
+
+        requests = new ArrayList<>();
+        for (String hash : missing) {
+            requests.add(new UpdateOneModel<>(
+                    Filters.eq("_id", hash),
+                    new Document("$inc", new Document("refs", refs.get(hash))).append("$setOnInsert", new Document("data", new BsonBinary(blocks.get(hash)))),
+                    new UpdateOptions().upsert(true)
+            ));
+        }
+        if (!requests.isEmpty()) {
+            blockCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+        }
+    }
+
+    /**
+     * drop one reference per occurrence in the manifest and remove blocks no longer referred to.
+     *
+     * @param hashes
+     */
+    void release(List<String> hashes) {
+        if (hashes.isEmpty()) {
+            return;
+        }
+
+        Map<String, Integer> refs = new LinkedHashMap<>();
+        for (String hash : hashes) {
+            refs.merge(hash, 1, Integer::sum);
+        }
+
+        List<WriteModel<Document>> requests = new ArrayList<>();
+        for (Map.Entry<String, Integer> ref : refs.entrySet()) {
+            requests.add(new UpdateOneModel<>(Filters.eq("_id", ref.getKey()), new Document("$inc", new Document("refs", -ref.getValue()))));
+        }
+        blockCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+        blockCollection.deleteMany(Filters.and(Filters.in("_id", refs.keySet()), Filters.lte("refs", 0)));
+    }
+
+    /**
+     * release the blocks of a deleted files document, chunked files have no manifest and are ignored.
+     *
+     * @param fileDocument
+     */
+    @SuppressWarnings("unchecked")
+    void releaseManifest(Document fileDocument) {
+        List<Document> manifest = (List<Document>) fileDocument.get("blocks");
+        if (null == manifest) {
+            return;
+        }
+
+        List<String> hashes = new ArrayList<>(manifest.size());
+        for (Document block : manifest) {
+            hashes.add(block.getString("_id"));
+        }
+        release(hashes);
+    }
+}
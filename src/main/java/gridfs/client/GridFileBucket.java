@@ -8,8 +8,19 @@ import com.mongodb.client.MongoDatabase;
 import org.bson.Document;
 import org.bson.types.ObjectId;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Executor;
 
 import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
 
@@ -17,122 +28,270 @@ import static org.bson.codecs.configuration.CodecRegistries.fromRegistries;
  * @author siuming
  */
 final class GridFileBucket {
-    private MongoDatabase database;
-    private ReadConcern readConcern;
-    private WriteConcern writeConcern;
-    private String bucketName;
-    private int chunkSize;
+    private final boolean reuse;
+    private final boolean dedup;
+    private final GridFileCache cache;
+    private final GridFileChunkCache chunkCache;
+    private final GridFileGet get;
+    private final GridFileGet0 get0;
+    private final GridFileMGet getM;
+    private final GridFileMGet0 getM0;
+    private final GridFileDelete delete;
+    private final GridFileDelete0 delete0;
+    private final GridFileMDelete deleteM;
+    private final GridFileMDelete0 deleteM0;
+    private final GridFileRead read;
+    private final GridFileRead0 read0;
+    private final GridFileMRead readM;
+    private final GridFileRRead readR;
+    private final GridFileRRead0 readR0;
+    private final GridFileRead1 read1;
+    private final GridFileRRead1 readR1;
+    private final GridFileRead2 read2;
+    private final GridFilePRead readP;
+    private final GridFilePRead0 readP0;
+    private final GridFileCRead readC;
+    private final GridFileWrite write;
+    private final GridFileWrite0 write0;
+    private final GridFileWrite1 write1;
+    private final GridFileSWrite writeS;
+    private final GridFileDWrite writeD;
+    private final GridFileLink link;
+    private final GridFileInline inline;
+    private final GridFileRWrite writeR;
+    private final GridFileRWrite0 writeR0;
 
-    GridFileBucket(MongoDatabase database, ReadConcern readConcern, WriteConcern writeConcern, String bucketName, int chunkSize) {
-        this.database = database;
-        this.readConcern = readConcern;
-        this.writeConcern = writeConcern;
-        this.bucketName = bucketName;
-        this.chunkSize = chunkSize;
+    GridFileBucket(MongoDatabase database, ReadConcern readConcern, WriteConcern writeConcern, String bucketName, int chunkSize, GridFsCodec codec, int batchBytes, int writeWindow, int patchBytes, int inlineBytes, int batchIds, long sweepPause, boolean reuse, boolean dedup, Executor executor, GridFileCache cache, GridFileChunkCache chunkCache, GridFileBuffers buffers) {
+        MongoCollection<Document> filesCollection = getFilesCollection(database, bucketName);
+        MongoCollection<Document> chunkCollection = getChunkCollection(database, bucketName);
+        MongoCollection<Document> blockCollection = getBlockCollection(database, bucketName);
+        MongoCollection<Document> refCollection = getRefCollection(database, bucketName);
+
+        MongoCollection<Document> filesReadCollection = filesCollection.withReadConcern(readConcern);
+        MongoCollection<Document> filesWriteCollection = filesCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> filesReadWriteCollection = filesReadCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> chunkReadCollection = chunkCollection.withReadConcern(readConcern);
+        MongoCollection<Document> chunkWriteCollection = chunkCollection.withWriteConcern(writeConcern);
+        MongoCollection<Document> chunkReadWriteCollection = chunkReadCollection.withWriteConcern(writeConcern);
+
+        GridFileBlocks blocks = new GridFileBlocks(blockCollection.withReadConcern(readConcern).withWriteConcern(writeConcern));
+        GridFileChunkRefs refs = new GridFileChunkRefs(refCollection.withReadConcern(readConcern).withWriteConcern(writeConcern));
+        GridFileChunks scanChunks = new GridFileChunks(chunkReadCollection, blocks, new GridFileChunkCache(0));
+        GridFileChunks rangeChunks = new GridFileChunks(chunkReadCollection, blocks, chunkCache);
+
+        this.reuse = reuse;
+        this.dedup = dedup;
+        this.cache = cache;
+        this.chunkCache = chunkCache;
+        this.get = new GridFileGet(filesReadCollection, cache);
+        this.get0 = new GridFileGet0(filesReadCollection, cache);
+        this.getM = new GridFileMGet(filesReadCollection, cache, batchIds);
+        this.getM0 = new GridFileMGet0(filesReadCollection, cache, batchIds);
+        this.delete = new GridFileDelete(filesReadWriteCollection, chunkReadWriteCollection, blocks, refs);
+        this.delete0 = new GridFileDelete0(filesReadWriteCollection, chunkReadWriteCollection, blocks, refs);
+        this.deleteM = new GridFileMDelete(filesReadWriteCollection, chunkReadWriteCollection, blocks, refs, cache, chunkCache, batchIds, sweepPause);
+        this.deleteM0 = new GridFileMDelete0(filesReadWriteCollection, deleteM, cache, batchIds);
+        this.read = new GridFileRead(get, scanChunks);
+        this.read0 = new GridFileRead0(get, scanChunks);
+        this.readM = new GridFileMRead(getM, read, chunkReadCollection, batchIds);
+        this.readR = new GridFileRRead(get, rangeChunks);
+        this.readR0 = new GridFileRRead0(get, rangeChunks);
+        this.read1 = new GridFileRead1(get, scanChunks, batchBytes);
+        this.readR1 = new GridFileRRead1(get, rangeChunks, batchBytes);
+        this.read2 = new GridFileRead2(get, scanChunks, batchBytes, executor, writeWindow);
+        this.readP = new GridFilePRead(get, scanChunks, executor);
+        this.readP0 = new GridFilePRead0(get, scanChunks, executor);
+        this.readC = new GridFileCRead(get, rangeChunks, executor);
+        this.write = new GridFileWrite(filesWriteCollection, chunkWriteCollection, chunkSize, codec, batchBytes, executor, writeWindow, buffers);
+        this.write0 = new GridFileWrite0(filesWriteCollection, chunkWriteCollection, chunkSize, codec, batchBytes, executor, writeWindow, buffers);
+        this.write1 = new GridFileWrite1(filesWriteCollection, chunkWriteCollection, chunkSize, codec, batchBytes, executor, writeWindow, buffers);
+        this.writeS = new GridFileSWrite(filesWriteCollection, chunkWriteCollection, chunkSize, codec, batchBytes, executor, writeWindow, buffers);
+        this.inline = new GridFileInline(filesReadWriteCollection, chunkSize, inlineBytes);
+        this.link = new GridFileLink(filesReadWriteCollection, chunkReadWriteCollection, refs);
+        this.writeD = new GridFileDWrite(filesWriteCollection, blocks, chunkSize, batchBytes, executor, writeWindow);
+        this.writeR = new GridFileRWrite(get, chunkReadWriteCollection, refs, inline, batchBytes, patchBytes, executor, writeWindow, buffers);
+        this.writeR0 = new GridFileRWrite0(get, chunkReadWriteCollection, refs, inline, batchBytes, patchBytes, executor, writeWindow, buffers);
     }
 
     GridFile get(ObjectId id) {
-        GridFileGet action = new GridFileGet(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern)
-        );
-        return action.exec(id);
+        return get.exec(id);
     }
 
     GridFile get0(String md5) {
-        GridFileGet0 action = new GridFileGet0(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern)
-        );
-        return action.exec(md5);
+        return get0.exec(md5);
+    }
+
+    Map<ObjectId, GridFile> getM(Collection<ObjectId> ids) {
+        return getM.exec(ids);
+    }
+
+    Map<String, GridFile> getM0(Collection<String> md5s) {
+        return getM0.exec(md5s);
     }
 
     void delete(ObjectId id) {
-        GridFileDelete action = new GridFileDelete(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern)
-        );
-        action.exec(id);
+        delete.exec(id);
+        cache.invalidate(id);
+        chunkCache.invalidate(id);
     }
 
     void delete0(String md5) {
-        GridFileDelete0 action = new GridFileDelete0(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern)
-        );
-        action.exec(md5);
+        ObjectId id = delete0.exec(md5);
+        cache.invalidate(id);
+        cache.invalidate0(md5);
+        chunkCache.invalidate(id);
+    }
+
+    GridFsDeleteResult deleteM(Collection<ObjectId> ids) {
+        return deleteM.exec(ids);
+    }
+
+    GridFsDeleteResult deleteM0(Collection<String> md5s) {
+        return deleteM0.exec(md5s);
     }
 
     byte[] read(ObjectId id) {
-        GridFileRead action = new GridFileRead(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern)
-        );
+        return read.exec(id);
+    }
 
-        return action.exec(id);
+    Map<ObjectId, byte[]> readM(Collection<ObjectId> ids) {
+        return readM.exec(ids);
     }
 
     void read0(ObjectId id, OutputStream out) {
-        GridFileRead0 action = new GridFileRead0(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern)
-        );
-
-        action.exec(id, out);
+        read0.exec(id, out);
     }
 
     byte[] readR(ObjectId id, long offset, long size) {
-        GridFileRRead action = new GridFileRRead(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern)
-        );
-
-        return action.exec(id, offset, size);
+        return readR.exec(id, offset, size);
     }
 
     void readR0(ObjectId id, long offset, long size, OutputStream out) {
-        GridFileRRead0 action = new GridFileRRead0(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern)
-        );
+        readR0.exec(id, offset, size, out);
+    }
+
+    void read1(ObjectId id, WritableByteChannel out) {
+        read1.exec(id, out);
+    }
 
-        action.exec(id, offset, size, out);
+    void readR1(ObjectId id, long offset, long size, WritableByteChannel out) {
+        readR1.exec(id, offset, size, out);
+    }
+
+    void read2(ObjectId id, Path out) {
+        read2.exec(id, out);
+    }
+
+    byte[] readP(ObjectId id, int concurrency, int prefetch) {
+        return readP.exec(id, concurrency, prefetch);
+    }
+
+    void readP0(ObjectId id, OutputStream out, int concurrency, int prefetch) {
+        readP0.exec(id, out, concurrency, prefetch);
+    }
+
+    GridFileChannel readC(ObjectId id, int prefetch) {
+        return readC.exec(id, prefetch);
     }
 
     ObjectId write(String name, String md5, long size, Document metadata, byte[] data) {
         ObjectId id = new ObjectId();
-        GridFileWrite action = new GridFileWrite(
-                getFilesCollection(database, bucketName).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withWriteConcern(writeConcern),
-                chunkSize
-        );
-        action.exec(id, name, md5, size, metadata, data);
+        if (inline.accepts(size)) {
+            inline.write(id, name, md5, null, size, metadata, data);
+            return id;
+        }
+        if (reuse && data.length <= size && link.exec(id, name, md5, size, metadata)) {
+            return id;
+        }
+        if (dedup) {
+            if (data.length > size) {
+                throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, data.length));
+            }
+            writeD.exec(id, name, md5, null, size, metadata, new ByteArrayInputStream(data));
+            return id;
+        }
+        write.exec(id, name, md5, size, metadata, data);
         return id;
     }
 
-    ObjectId write0(String name, String md5, long size, Document metadata, InputStream data) {
+    ObjectId write0(String name, String md5, String sha256, long size, Document metadata, InputStream data) {
         ObjectId id = new ObjectId();
-        GridFileWrite0 action = new GridFileWrite0(
-                getFilesCollection(database, bucketName).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withWriteConcern(writeConcern),
-                chunkSize
-        );
-        action.exec(id, name, md5, size, metadata, data);
+        if (inline.accepts(size)) {
+            inline.write0(id, name, md5, sha256, size, metadata, data);
+            return id;
+        }
+        if (reuse && link.exec(id, name, md5, size, metadata)) {
+            return id;
+        }
+        if (dedup) {
+            writeD.exec(id, name, md5, sha256, size, metadata, data);
+            return id;
+        }
+        write0.exec(id, name, md5, sha256, size, metadata, data);
         return id;
     }
 
+    ObjectId write1(String name, String md5, Document metadata, Path data) {
+        ObjectId id = new ObjectId();
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (inline.accepts(size)) {
+                inline.write(id, name, md5, null, size, metadata, readAll(channel, size));
+                return id;
+            }
+            if (reuse && link.exec(id, name, md5, size, metadata)) {
+                return id;
+            }
+            if (dedup) {
+                writeD.exec(id, name, md5, null, size, metadata, Channels.newInputStream(channel));
+                return id;
+            }
+            write1.exec(id, name, md5, metadata, channel, size);
+            return id;
+        } catch (IOException e) {
+            throw new GridFsException(e);
+        }
+    }
+
+    GridFsUpload writeS(String name, Document metadata) {
+        return writeS.exec(new ObjectId(), name, metadata);
+    }
+
+    GridFsUpload writeS(String name, Document metadata, int window) {
+        return writeS.exec(new ObjectId(), name, metadata, window);
+    }
+
+    // fails when the file no longer has size bytes.
+    private static byte[] readAll(FileChannel channel, long size) throws IOException {
+        if (size >= Integer.MAX_VALUE) {
+            throw new GridFsException(String.format("file size=%s too large.", size));
+        }
+
+        ByteBuffer buf = ByteBuffer.allocate((int) size);
+        while (buf.hasRemaining() && channel.read(buf) != -1) {
+        }
+        if (buf.hasRemaining() || channel.read(ByteBuffer.allocate(1)) != -1) {
+            throw new GridFsException(String.format("file size changed[size=%s].", size));
+        }
+        return buf.array();
+    }
+
     void writeR(ObjectId id, long offset, byte[] data) {
-        GridFileRWrite action = new GridFileRWrite(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern)
-        );
-        action.exec(id, offset, data);
+        try {
+            writeR.exec(id, offset, data);
+        } finally {
+            cache.invalidate(id);
+            chunkCache.invalidate(id);
+        }
     }
 
     void writeR0(ObjectId id, long offset, InputStream data) {
-        GridFileRWrite0 action = new GridFileRWrite0(
-                getFilesCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern),
-                getChunkCollection(database, bucketName).withReadConcern(readConcern).withWriteConcern(writeConcern)
-        );
-        action.exec(id, offset, data);
+        try {
+            writeR0.exec(id, offset, data);
+        } finally {
+            cache.invalidate(id);
+            chunkCache.invalidate(id);
+        }
     }
 
 
@@ -142,9 +301,21 @@ final class GridFileBucket {
                 .withCodecRegistry(fromRegistries(database.getCodecRegistry(), MongoClient.getDefaultCodecRegistry()));
     }
 
+    private static MongoCollection<Document> getBlockCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".blocks")
+                .withCodecRegistry(GridFileChunks.codecRegistry(MongoClient.getDefaultCodecRegistry()));
+    }
+
+    private static MongoCollection<Document> getRefCollection(final MongoDatabase database, final String bucketName) {
+        return database
+                .getCollection(bucketName + ".refs")
+                .withCodecRegistry(MongoClient.getDefaultCodecRegistry());
+    }
+
     private static MongoCollection<Document> getChunkCollection(final MongoDatabase database, final String bucketName) {
         return database
                 .getCollection(bucketName + ".chunks")
-                .withCodecRegistry(MongoClient.getDefaultCodecRegistry());
+                .withCodecRegistry(GridFileChunks.codecRegistry(MongoClient.getDefaultCodecRegistry()));
     }
 }
@@ -0,0 +1,69 @@
+package gridfs.client;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+
+/**
+ * bounded pool of chunk buffers shared by the transfers of a client, free buffers are striped by thread to keep contention low.
+ * a buffer of another length is never pooled, and a release to a full stripe drops the buffer.
+ *
+ * @author siuming
+ */
+final class GridFileBuffers {
+    private static final int STRIPES = Math.max(1, Integer.highestOneBit(Runtime.getRuntime().availableProcessors()));
+
+    private final int bufferSize;
+    private final ArrayBlockingQueue<byte[]>[] stripes;
+
+    /**
+     * @param bufferSize
+     * @param maxBytes   max bytes of free buffers kept, 0 disables pooling.
+     */
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    GridFileBuffers(int bufferSize, long maxBytes) {
+        this.bufferSize = bufferSize;
+        long stripeBuffers = maxBytes / bufferSize / STRIPES;
+        this.stripes = new ArrayBlockingQueue[stripeBuffers > 0 ? STRIPES : 0];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new ArrayBlockingQueue<>((int) Math.min(stripeBuffers, Integer.MAX_VALUE));
+        }
+    }
+
+    /**
+     * @param length
+     * @return a buffer of exactly length bytes, its content is undefined.
+     */
+    byte[] acquire(int length) {
+        if (length != bufferSize || stripes.length == 0) {
+            return new byte[length];
+        }
+
+        int stripe = stripe();
+        for (int i = 0; i < stripes.length; i++) {
+            byte[] buffer = stripes[(stripe + i) & (stripes.length - 1)].poll();
+            if (null != buffer) {
+                return buffer;
+            }
+        }
+        return new byte[length];
+    }
+
+    /**
+     * @param buffer not used by the caller afterwards.
+     */
+    void release(byte[] buffer) {
+        if (buffer.length == bufferSize && stripes.length > 0) {
+            stripes[stripe()].offer(buffer);
+        }
+    }
+
+    void release(List<byte[]> buffers) {
+        for (byte[] buffer : buffers) {
+            release(buffer);
+        }
+    }
+
+    private int stripe() {
+        return (int) Thread.currentThread().getId() & (stripes.length - 1);
+    }
+}
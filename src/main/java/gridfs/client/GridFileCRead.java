@@ -0,0 +1,32 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFileCRead {
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final Executor executor;
+
+    GridFileCRead(GridFileGet get, GridFileChunks chunks, Executor executor) {
+        this.get = get;
+        this.chunks = chunks;
+        this.executor = executor;
+    }
+
+    GridFileChannel exec(ObjectId id, int prefetch) {
+        if (prefetch < 0) {
+            throw new GridFsException(String.format("prefetch=%s negative.", prefetch));
+        }
+
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+        return new GridFileChannel(gridFile, chunks, prefetch, executor);
+    }
+}
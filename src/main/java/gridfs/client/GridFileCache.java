@@ -0,0 +1,214 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * bounded lru cache of file documents, keyed by id and indexed by md5.
+ * a file read before an invalidation of its id or md5 is not cached, see begin.
+ *
+ * @author siuming
+ */
+final class GridFileCache {
+    private final int maxSize;
+    private final long ttl;
+    private final LinkedHashMap<ObjectId, CacheEntry> entries;
+    private final Map<String, ObjectId> md5Entries = new HashMap<>();
+
+    // bumped by every invalidation, the ids and md5s invalidated are kept as long as an older lookup is in flight.
+    private long generation = 0;
+    private final TreeMap<Long, Integer> lookups = new TreeMap<>();
+    private final Map<Object, Long> tombstones = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * @param maxSize max cached files, caching is disabled when it is 0.
+     * @param ttl     millis a cached file lives, files never expire when it is 0.
+     */
+    GridFileCache(int maxSize, long ttl) {
+        this.maxSize = maxSize;
+        this.ttl = ttl;
+        this.entries = new LinkedHashMap<ObjectId, CacheEntry>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<ObjectId, CacheEntry> eldest) {
+                if (size() <= GridFileCache.this.maxSize) {
+                    return false;
+                }
+                unindex(eldest.getValue().file);
+                return true;
+            }
+        };
+    }
+
+    GridFile get(ObjectId id) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        synchronized (this) {
+            return lookup(id);
+        }
+    }
+
+    GridFile get0(String md5) {
+        if (maxSize <= 0) {
+            return null;
+        }
+
+        synchronized (this) {
+            ObjectId id = md5Entries.get(md5);
+            if (null == id) {
+                misses.incrementAndGet();
+                return null;
+            }
+            return lookup(id);
+        }
+    }
+
+    /**
+     * start a lookup of files from the files collection, every begin must be paired with an end.
+     *
+     * @return stamp to pass to put and end.
+     */
+    long begin() {
+        if (maxSize <= 0) {
+            return 0;
+        }
+
+        synchronized (this) {
+            lookups.merge(generation, 1, Integer::sum);
+            return generation;
+        }
+    }
+
+    /**
+     * @param stamp returned by the begin of the lookup that read file, file is dropped when its id or md5 was invalidated since.
+     */
+    void put(long stamp, GridFile file) {
+        if (maxSize <= 0 || null == file) {
+            return;
+        }
+
+        synchronized (this) {
+            if (invalidated(file.id(), stamp) || invalidated(file.md5(), stamp)) {
+                return;
+            }
+
+            CacheEntry previous = entries.put(file.id(), new CacheEntry(file, ttl > 0 ? System.currentTimeMillis() + ttl : Long.MAX_VALUE));
+            if (null != previous) {
+                unindex(previous.file);
+            }
+            if (null != file.md5() && !file.md5().isEmpty()) {
+                md5Entries.put(file.md5(), file.id());
+            }
+        }
+    }
+
+    void end(long stamp) {
+        if (maxSize <= 0) {
+            return;
+        }
+
+        synchronized (this) {
+            if (lookups.merge(stamp, -1, Integer::sum) <= 0) {
+                lookups.remove(stamp);
+            }
+            if (lookups.isEmpty()) {
+                tombstones.clear();
+                return;
+            }
+
+            long oldest = lookups.firstKey();
+            tombstones.values().removeIf(invalidatedAt -> invalidatedAt <= oldest);
+        }
+    }
+
+    void invalidate(ObjectId id) {
+        if (maxSize <= 0 || null == id) {
+            return;
+        }
+
+        synchronized (this) {
+            tombstone(id);
+            CacheEntry entry = entries.remove(id);
+            if (null != entry) {
+                unindex(entry.file);
+            }
+        }
+    }
+
+    void invalidate0(String md5) {
+        if (maxSize <= 0 || null == md5) {
+            return;
+        }
+
+        synchronized (this) {
+            tombstone(md5);
+            ObjectId id = md5Entries.remove(md5);
+            if (null != id) {
+                entries.remove(id);
+            }
+        }
+    }
+
+    long hits() {
+        return hits.get();
+    }
+
+    long misses() {
+        return misses.get();
+    }
+
+    private GridFile lookup(ObjectId id) {
+        CacheEntry entry = entries.get(id);
+        if (null == entry) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (entry.expireAt < System.currentTimeMillis()) {
+            entries.remove(id);
+            unindex(entry.file);
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.file;
+    }
+
+    private void tombstone(Object key) {
+        generation++;
+        if (!lookups.isEmpty()) {
+            tombstones.put(key, generation);
+        }
+    }
+
+    private boolean invalidated(Object key, long stamp) {
+        Long invalidatedAt = null == key ? null : tombstones.get(key);
+        return null != invalidatedAt && invalidatedAt > stamp;
+    }
+
+    private void unindex(GridFile file) {
+        if (null != file.md5()) {
+            md5Entries.remove(file.md5(), file.id());
+        }
+    }
+
+    private static class CacheEntry {
+        final GridFile file;
+        final long expireAt;
+
+        private CacheEntry(GridFile file, long expireAt) {
+            this.file = file;
+            this.expireAt = expireAt;
+        }
+    }
+}
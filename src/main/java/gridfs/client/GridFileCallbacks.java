@@ -0,0 +1,31 @@
+package gridfs.client;
+
+import com.mongodb.async.SingleResultCallback;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * bridges async driver callbacks to futures.
+ *
+ * @author siuming
+ */
+final class GridFileCallbacks {
+    private GridFileCallbacks() {
+    }
+
+    static <T> SingleResultCallback<T> complete(CompletableFuture<T> future) {
+        return (result, t) -> {
+            if (null != t) {
+                future.completeExceptionally(t);
+            } else {
+                future.complete(result);
+            }
+        };
+    }
+
+    static <T> CompletableFuture<T> failed(Throwable t) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        future.completeExceptionally(t);
+        return future;
+    }
+}
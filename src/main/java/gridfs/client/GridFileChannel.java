@@ -0,0 +1,210 @@
+package gridfs.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.NonWritableChannelException;
+import java.nio.channels.SeekableByteChannel;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+
+/**
+ * read only channel over a stored file, the chunks after the one being read are fetched ahead on the executor.
+ * a position outside the fetched run drops the chunks fetched ahead and starts a new run there.
+ *
+ * @author siuming
+ */
+final class GridFileChannel implements SeekableByteChannel {
+    private final GridFile gridFile;
+    private final GridFileChunks chunks;
+    private final int chunkSize;
+    private final int lastNr;
+    private final int prefetch;
+    private final Executor executor;
+
+    private GridFileWindow<byte[]> window;
+    private int windowNr;
+    private int fetchNr;
+
+    private byte[] chunk;
+    private int chunkNr = -1;
+    private long position = 0;
+    private boolean open = true;
+
+    /**
+     * @param gridFile
+     * @param chunks
+     * @param prefetch max chunks fetched ahead, chunks are fetched by the reading thread when it is 0.
+     * @param executor
+     */
+    GridFileChannel(GridFile gridFile, GridFileChunks chunks, int prefetch, Executor executor) {
+        this.gridFile = gridFile;
+        this.chunks = chunks;
+        this.chunkSize = (int) gridFile.chunkSize();
+        this.lastNr = (int) ((gridFile.size() + chunkSize - 1) / chunkSize) - 1;
+        this.prefetch = prefetch;
+        this.executor = executor;
+    }
+
+    @Override
+    public synchronized int read(ByteBuffer dst) throws IOException {
+        ensureOpen();
+        if (position >= gridFile.size()) {
+            return -1;
+        }
+
+        int readBytes = 0;
+        while (dst.hasRemaining() && position < gridFile.size()) {
+            int nr = (int) (position / chunkSize);
+            byte[] data = chunk(nr);
+            int offset = (int) (position % chunkSize);
+            int length = Math.min(dst.remaining(), data.length - offset);
+            dst.put(data, offset, length);
+            position = position + length;
+            readBytes = readBytes + length;
+        }
+        return readBytes;
+    }
+
+    @Override
+    public int write(ByteBuffer src) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized long position() throws IOException {
+        ensureOpen();
+        return position;
+    }
+
+    /**
+     * @param newPosition a position past the end of the file makes reads return -1.
+     * @return
+     */
+    @Override
+    public synchronized SeekableByteChannel position(long newPosition) throws IOException {
+        ensureOpen();
+        if (newPosition < 0) {
+            throw new IllegalArgumentException(String.format("position=%s negative.", newPosition));
+        }
+        position = newPosition;
+        return this;
+    }
+
+    @Override
+    public long size() throws IOException {
+        ensureOpen();
+        return gridFile.size();
+    }
+
+    @Override
+    public SeekableByteChannel truncate(long size) {
+        throw new NonWritableChannelException();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (!open) {
+            return;
+        }
+        open = false;
+        if (null != window) {
+            window.cancel();
+            window = null;
+        }
+        chunk = null;
+    }
+
+    /**
+     * @return stream reading from the channel position, skips move the position without reading.
+     */
+    InputStream newInputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) == -1 ? -1 : b[0] & 0xff;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0) {
+                    return 0;
+                }
+                return GridFileChannel.this.read(ByteBuffer.wrap(b, off, len));
+            }
+
+            @Override
+            public long skip(long n) throws IOException {
+                synchronized (GridFileChannel.this) {
+                    long skipped = Math.max(0, Math.min(n, gridFile.size() - position()));
+                    position(position() + skipped);
+                    return skipped;
+                }
+            }
+
+            @Override
+            public int available() throws IOException {
+                synchronized (GridFileChannel.this) {
+                    return (int) Math.min(Integer.MAX_VALUE, Math.max(0, gridFile.size() - position()));
+                }
+            }
+
+            @Override
+            public void close() {
+                GridFileChannel.this.close();
+            }
+        };
+    }
+
+    private byte[] chunk(int nr) throws IOException {
+        if (nr == chunkNr) {
+            return chunk;
+        }
+
+        if (null == window || windowNr != nr || window.isEmpty()) {
+            if (null != window) {
+                window.cancel();
+            }
+            window = new GridFileWindow<>(executor, prefetch > 0 ? prefetch + 1 : 0);
+            windowNr = nr;
+            fetchNr = nr;
+        }
+        while (!window.isFull() && fetchNr <= lastNr) {
+            int fetch = fetchNr++;
+            window.submit(() -> fetch(fetch));
+        }
+
+        try {
+            chunk = window.take();
+        } catch (GridFsException e) {
+            window = null;
+            throw new IOException(e.getMessage(), e);
+        }
+        chunkNr = nr;
+        windowNr = nr + 1;
+        return chunk;
+    }
+
+    private byte[] fetch(int nr) {
+        int length = (int) Math.min(chunkSize, gridFile.size() - (long) nr * chunkSize);
+        Iterator<byte[]> iterator = chunks.read(gridFile, nr, nr).iterator();
+        byte[] data = iterator.next();
+        if (data.length < length) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+        }
+        return data;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package gridfs.client;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * writes chunk data to a channel without copying it, writes to a gathering channel are batched up to batchBytes.
+ * a file channel is written by position and its position is moved once on flush.
+ *
+ * @author siuming
+ */
+final class GridFileChannelWriter {
+    private final WritableByteChannel channel;
+    private final int batchBytes;
+
+    private final List<ByteBuffer> batch = new ArrayList<>();
+    private int batchedBytes;
+
+    private final long startPosition;
+    private long writeBytes;
+
+    GridFileChannelWriter(WritableByteChannel channel, int batchBytes) {
+        this.channel = channel;
+        this.batchBytes = batchBytes;
+        try {
+            this.startPosition = channel instanceof FileChannel ? ((FileChannel) channel).position() : 0;
+        } catch (IOException e) {
+            throw new GridFsException(e);
+        }
+    }
+
+    void write(byte[] chunk, int offset, int length) {
+        ByteBuffer buffer = ByteBuffer.wrap(chunk, offset, length);
+        try {
+            if (channel instanceof FileChannel) {
+                FileChannel fileChannel = (FileChannel) channel;
+                long position = startPosition + writeBytes;
+                while (buffer.hasRemaining()) {
+                    position = position + fileChannel.write(buffer, position);
+                }
+            } else if (channel instanceof GatheringByteChannel) {
+                if (!batch.isEmpty() && batchedBytes + length > batchBytes) {
+                    flushBatch();
+                }
+                batch.add(buffer);
+                batchedBytes = batchedBytes + length;
+            } else {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+        } catch (IOException e) {
+            throw new GridFsException(e);
+        }
+        writeBytes = writeBytes + length;
+    }
+
+    void flush() {
+        try {
+            if (channel instanceof FileChannel) {
+                ((FileChannel) channel).position(startPosition + writeBytes);
+            } else if (!batch.isEmpty()) {
+                flushBatch();
+            }
+        } catch (IOException e) {
+            throw new GridFsException(e);
+        }
+    }
+
+    private void flushBatch() throws IOException {
+        ByteBuffer[] buffers = batch.toArray(new ByteBuffer[batch.size()]);
+        GatheringByteChannel gatheringChannel = (GatheringByteChannel) channel;
+        long remaining = batchedBytes;
+        while (remaining > 0) {
+            remaining = remaining - gatheringChannel.write(buffers);
+        }
+        batch.clear();
+        batchedBytes = 0;
+    }
+}
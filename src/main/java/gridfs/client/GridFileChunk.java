@@ -0,0 +1,26 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+/**
+ * a stored chunk as read from the chunks collection, the data is still encoded by the file codec.
+ *
+ * @author siuming
+ */
+final class GridFileChunk {
+    final ObjectId filesId;
+    final int n;
+    final byte[] data;
+    final int patchCount;
+    final int[] patchOffsets;
+    final byte[][] patchData;
+
+    GridFileChunk(ObjectId filesId, int n, byte[] data, int patchCount, int[] patchOffsets, byte[][] patchData) {
+        this.filesId = filesId;
+        this.n = n;
+        this.data = data;
+        this.patchCount = patchCount;
+        this.patchOffsets = patchOffsets;
+        this.patchData = patchData;
+    }
+}
@@ -0,0 +1,110 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * lru cache of chunk data keyed by files_id and n, bounded by the total bytes cached.
+ *
+ * @author siuming
+ */
+final class GridFileChunkCache {
+    private final long maxBytes;
+    private final LinkedHashMap<Key, byte[]> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+
+    /**
+     * @param maxBytes max bytes of chunk data cached, caching is disabled when it is 0.
+     */
+    GridFileChunkCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    boolean isEnabled() {
+        return maxBytes > 0;
+    }
+
+    byte[] get(ObjectId id, int n) {
+        if (maxBytes <= 0) {
+            return null;
+        }
+
+        synchronized (this) {
+            return entries.get(new Key(id, n));
+        }
+    }
+
+    boolean contains(ObjectId id, int n) {
+        if (maxBytes <= 0) {
+            return false;
+        }
+
+        synchronized (this) {
+            return entries.containsKey(new Key(id, n));
+        }
+    }
+
+    void put(ObjectId id, int n, byte[] data) {
+        if (maxBytes <= 0 || data.length > maxBytes) {
+            return;
+        }
+
+        synchronized (this) {
+            byte[] previous = entries.put(new Key(id, n), data);
+            bytes = bytes + data.length - (null == previous ? 0 : previous.length);
+
+            Iterator<byte[]> it = entries.values().iterator();
+            while (bytes > maxBytes && it.hasNext()) {
+                bytes = bytes - it.next().length;
+                it.remove();
+            }
+        }
+    }
+
+    void invalidate(ObjectId id) {
+        if (maxBytes <= 0 || null == id) {
+            return;
+        }
+
+        synchronized (this) {
+            Iterator<Map.Entry<Key, byte[]>> it = entries.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<Key, byte[]> entry = it.next();
+                if (entry.getKey().id.equals(id)) {
+                    bytes = bytes - entry.getValue().length;
+                    it.remove();
+                }
+            }
+        }
+    }
+
+    private static class Key {
+        final ObjectId id;
+        final int n;
+
+        private Key(ObjectId id, int n) {
+            this.id = id;
+            this.n = n;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return n == key.n && id.equals(key.id);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * id.hashCode() + n;
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package gridfs.client;
+
+import org.bson.BsonBinary;
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * decodes chunk documents straight into GridFileChunk, without building a Document or copying the binary data.
+ * fields other than files_id, n, data, patches and patchCount are skipped.
+ *
+ * @author siuming
+ */
+final class GridFileChunkCodec implements Codec<GridFileChunk> {
+    private static final int[] NO_OFFSETS = new int[0];
+    private static final byte[][] NO_DATA = new byte[0][];
+
+    @Override
+    public GridFileChunk decode(BsonReader reader, DecoderContext decoderContext) {
+        ObjectId filesId = null;
+        int n = 0;
+        byte[] data = null;
+        int patchCount = 0;
+        List<Integer> patchOffsets = null;
+        List<byte[]> patchData = null;
+
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String name = reader.readName();
+            BsonType type = reader.getCurrentBsonType();
+            if ("files_id".equals(name) && type == BsonType.OBJECT_ID) {
+                filesId = reader.readObjectId();
+            } else if ("n".equals(name) && isNumber(type)) {
+                n = readInt(reader, type);
+            } else if ("data".equals(name) && type == BsonType.BINARY) {
+                data = reader.readBinaryData().getData();
+            } else if ("patchCount".equals(name) && isNumber(type)) {
+                patchCount = readInt(reader, type);
+            } else if ("patches".equals(name) && type == BsonType.ARRAY) {
+                patchOffsets = new ArrayList<>();
+                patchData = new ArrayList<>();
+                readPatches(reader, patchOffsets, patchData);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+
+        if (null == patchOffsets) {
+            return new GridFileChunk(filesId, n, data, patchCount, NO_OFFSETS, NO_DATA);
+        }
+        int[] offsets = new int[patchOffsets.size()];
+        for (int i = 0; i < offsets.length; i++) {
+            offsets[i] = patchOffsets.get(i);
+        }
+        return new GridFileChunk(filesId, n, data, patchCount, offsets, patchData.toArray(new byte[patchData.size()][]));
+    }
+
+    private static void readPatches(BsonReader reader, List<Integer> patchOffsets, List<byte[]> patchData) {
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            int offset = 0;
+            byte[] data = new byte[0];
+            reader.readStartDocument();
+            while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+                String name = reader.readName();
+                BsonType type = reader.getCurrentBsonType();
+                if ("offset".equals(name) && isNumber(type)) {
+                    offset = readInt(reader, type);
+                } else if ("data".equals(name) && type == BsonType.BINARY) {
+                    data = reader.readBinaryData().getData();
+                } else {
+                    reader.skipValue();
+                }
+            }
+            reader.readEndDocument();
+            patchOffsets.add(offset);
+            patchData.add(data);
+        }
+        reader.readEndArray();
+    }
+
+    private static boolean isNumber(BsonType type) {
+        return type == BsonType.INT32 || type == BsonType.INT64 || type == BsonType.DOUBLE;
+    }
+
+    private static int readInt(BsonReader reader, BsonType type) {
+        switch (type) {
+            case INT32:
+                return reader.readInt32();
+            case INT64:
+                return (int) reader.readInt64();
+            default:
+                return (int) reader.readDouble();
+        }
+    }
+
+    @Override
+    public void encode(BsonWriter writer, GridFileChunk value, EncoderContext encoderContext) {
+        writer.writeStartDocument();
+        writer.writeObjectId("files_id", value.filesId);
+        writer.writeInt32("n", value.n);
+        writer.writeBinaryData("data", new BsonBinary(value.data));
+        writer.writeEndDocument();
+    }
+
+    @Override
+    public Class<GridFileChunk> getEncoderClass() {
+        return GridFileChunk.class;
+    }
+}
@@ -0,0 +1,64 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * counts the files sharing a chunk set besides the file that wrote it, a chunk set without a counter belongs to one file only.
+ *
+ * @author siuming
+ */
+final class GridFileChunkRefs {
+    private final MongoCollection<Document> refCollection;
+
+    GridFileChunkRefs(MongoCollection<Document> refCollection) {
+        this.refCollection = refCollection;
+    }
+
+    void reference(ObjectId chunksId) {
+        refCollection.updateOne(Filters.eq("_id", chunksId), new Document("$inc", new Document("refs", 1)), new UpdateOptions().upsert(true));
+    }
+
+    /**
+     * drop one reference of a chunk set whose files document is already deleted.
+     *
+     * @param chunksId
+     * @return true when other files still read the chunks.
+     */
+    boolean release(ObjectId chunksId) {
+        Document ref = refCollection.findOneAndUpdate(
+                Filters.and(Filters.eq("_id", chunksId), Filters.gt("refs", 0)),
+                new Document("$inc", new Document("refs", -1))
+        );
+        if (null == ref) {
+            return false;
+        }
+        if (ref.get("refs", Number.class).intValue() <= 1) {
+            refCollection.deleteOne(Filters.and(Filters.eq("_id", chunksId), Filters.lte("refs", 0)));
+        }
+        return true;
+    }
+
+    /**
+     * @param chunksIds
+     * @return the chunk sets of chunksIds shared by other files.
+     */
+    Set<ObjectId> shared(Collection<ObjectId> chunksIds) {
+        Set<ObjectId> shared = new HashSet<>();
+        for (Document ref : refCollection.find(Filters.and(Filters.in("_id", chunksIds), Filters.gt("refs", 0))).projection(new Document("_id", 1))) {
+            shared.add(ref.getObjectId("_id"));
+        }
+        return shared;
+    }
+
+    boolean isShared(ObjectId chunksId) {
+        return null != refCollection.find(Filters.and(Filters.eq("_id", chunksId), Filters.gt("refs", 0))).first();
+    }
+}
@@ -0,0 +1,149 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.BsonBinary;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * buffers chunk replacements of one transfer and sends them as unordered bulk writes of at most batchBytes chunk data.
+ *
+ * @author siuming
+ */
+final class GridFileChunkWriter {
+    static final int MAX_PATCHES = 16;
+
+    private final MongoCollection<Document> chunkCollection;
+    private final GridFile gridFile;
+    private final int batchBytes;
+    private final GridFileWindow<Void> window;
+    private final GridFileBuffers buffers;
+
+    private List<WriteModel<Document>> batch = new ArrayList<>();
+    private List<byte[]> batchBuffers = new ArrayList<>();
+    private int batchedBytes = 0;
+
+    GridFileChunkWriter(MongoCollection<Document> chunkCollection, GridFile gridFile, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.chunkCollection = chunkCollection;
+        this.gridFile = gridFile;
+        this.batchBytes = batchBytes;
+        this.window = new GridFileWindow<>(executor, writeWindow);
+        this.buffers = buffers;
+    }
+
+    /**
+     * @param nr
+     * @param chunk released to the buffer pool once it is sent.
+     */
+    void write(int nr, byte[] chunk) {
+        ObjectId id = gridFile.id();
+        if (!batch.isEmpty() && batchedBytes + chunk.length > batchBytes) {
+            writeBatch();
+        }
+        byte[] data = gridFile.codec().encode(chunk);
+        if (data == chunk) {
+            batchBuffers.add(chunk);
+        } else {
+            buffers.release(chunk);
+        }
+        batch.add(new ReplaceOneModel<>(
+                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
+                new Document("files_id", id).append("n", nr).append("data", new BsonBinary(data)),
+                new UpdateOptions().upsert(true)
+        ));
+        batchedBytes = batchedBytes + chunk.length;
+    }
+
+    /**
+     * push a patch onto a stored chunk without sending the chunk itself, the chunk is compacted once it holds MAX_PATCHES patches.
+     *
+     * @param nr
+     * @param offset offset of the patch in the chunk.
+     * @param data
+     * @return false when the chunk is not stored yet.
+     */
+    boolean patch(int nr, int offset, byte[] data) {
+        ObjectId id = gridFile.id();
+        Document fileChunk = chunkCollection.findOneAndUpdate(
+                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
+                new Document("$push", new Document("patches", new Document("offset", offset).append("data", new BsonBinary(data))))
+                        .append("$inc", new Document("patchCount", 1)),
+                new FindOneAndUpdateOptions().projection(new Document("patchCount", 1)).returnDocument(ReturnDocument.AFTER)
+        );
+        if (null == fileChunk) {
+            return false;
+        }
+
+        if (fileChunk.getInteger("patchCount") >= MAX_PATCHES) {
+            compact(nr);
+        }
+        return true;
+    }
+
+    /**
+     * send the buffered replacements and wait for every batch in flight.
+     */
+    void flush() {
+        if (!batch.isEmpty()) {
+            writeBatch();
+        }
+        while (!window.isEmpty()) {
+            window.take();
+        }
+    }
+
+    /**
+     * drop the buffered replacements, batches already sent are not rolled back.
+     */
+    void cancel() {
+        batch = new ArrayList<>();
+        batchBuffers = new ArrayList<>();
+        batchedBytes = 0;
+        window.cancel();
+    }
+
+    private void compact(int nr) {
+        ObjectId id = gridFile.id();
+        GridFileChunk fileChunk = chunkCollection.find(Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)), GridFileChunk.class).first();
+        if (null == fileChunk) {
+            return;
+        }
+
+        // a patch pushed after the chunk was read keeps the count from matching, the chunk is then compacted by a later patch.
+        chunkCollection.replaceOne(
+                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr), Filters.eq("patchCount", fileChunk.patchCount)),
+                new Document("files_id", id).append("n", nr).append("data", new BsonBinary(gridFile.codec().encode(GridFileChunks.data(fileChunk, gridFile))))
+        );
+    }
+
+    private void writeBatch() {
+        while (window.isFull()) {
+            window.take();
+        }
+
+        List<WriteModel<Document>> requests = batch;
+        List<byte[]> requestBuffers = batchBuffers;
+        window.submit(() -> {
+            try {
+                chunkCollection.bulkWrite(requests, new BulkWriteOptions().ordered(false));
+            } finally {
+                buffers.release(requestBuffers);
+            }
+            return null;
+        });
+        batch = new ArrayList<>();
+        batchBuffers = new ArrayList<>();
+        batchedBytes = 0;
+    }
+}
@@ -0,0 +1,100 @@
+package gridfs.client;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * cuts a stream into content defined blocks with a fastcdc gear hash, an insert or delete only moves the boundaries next to it.
+ *
+ * @author siuming
+ */
+final class GridFileChunker {
+    static final int MIN_SIZE = 16 * 1024;
+    static final int AVG_SIZE = 64 * 1024;
+    static final int MAX_SIZE = 256 * 1024;
+
+    // stricter mask below the average size and looser above it, so block sizes gather around AVG_SIZE.
+    private static final long MASK_S = mask(18);
+    private static final long MASK_L = mask(14);
+    private static final long[] GEAR = new long[256];
+
+    static {
+        // the gear table decides every boundary, it must never change once blocks are stored.
+        Random random = new Random(0x6772696466734cL);
+        for (int i = 0; i < GEAR.length; i++) {
+            GEAR[i] = random.nextLong();
+        }
+    }
+
+    private final InputStream in;
+    private final byte[] buf = new byte[MAX_SIZE * 2];
+    private int position = 0;
+    private int limit = 0;
+    private boolean eof = false;
+
+    GridFileChunker(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * @return next block, null when the stream is exhausted.
+     */
+    byte[] next() throws IOException {
+        fill();
+        if (position == limit) {
+            return null;
+        }
+
+        int cut = cut(buf, position, Math.min(limit - position, MAX_SIZE));
+        byte[] block = Arrays.copyOfRange(buf, position, position + cut);
+        position = position + cut;
+        return block;
+    }
+
+    private void fill() throws IOException {
+        if (eof || limit - position >= MAX_SIZE) {
+            return;
+        }
+
+        System.arraycopy(buf, position, buf, 0, limit - position);
+        limit = limit - position;
+        position = 0;
+        while (limit < buf.length) {
+            int read = in.read(buf, limit, buf.length - limit);
+            if (read == -1) {
+                eof = true;
+                return;
+            }
+            limit = limit + read;
+        }
+    }
+
+    private static int cut(byte[] data, int offset, int length) {
+        if (length <= MIN_SIZE) {
+            return length;
+        }
+
+        int normalSize = Math.min(AVG_SIZE, length);
+        long hash = 0;
+        int i = MIN_SIZE;
+        for (; i < normalSize; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & MASK_S) == 0) {
+                return i + 1;
+            }
+        }
+        for (; i < length; i++) {
+            hash = (hash << 1) + GEAR[data[offset + i] & 0xff];
+            if ((hash & MASK_L) == 0) {
+                return i + 1;
+            }
+        }
+        return length;
+    }
+
+    private static long mask(int bits) {
+        return ((1L << bits) - 1) << (64 - bits);
+    }
+}
@@ -0,0 +1,257 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoCursor;
+import org.bson.BsonBinary;
+import org.bson.BsonType;
+import org.bson.Document;
+import org.bson.codecs.BsonTypeClassMap;
+import org.bson.codecs.DocumentCodecProvider;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.bson.types.ObjectId;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * reads the data of a run of chunks in order, cached chunks are served first and only missing runs are queried.
+ * a deduplicated file is presented as chunks of its chunk size cut from its blocks.
+ *
+ * @author siuming
+ */
+final class GridFileChunks {
+    private static final long BLOCK_WINDOW_BYTES = 16 * 1024 * 1024;
+
+    private final MongoCollection<Document> chunkCollection;
+    private final GridFileBlocks blocks;
+    private final GridFileChunkCache cache;
+
+    GridFileChunks(MongoCollection<Document> chunkCollection, GridFileBlocks blocks, GridFileChunkCache cache) {
+        this.chunkCollection = chunkCollection;
+        this.blocks = blocks;
+        this.cache = cache;
+    }
+
+    /**
+     * @param gridFile
+     * @param firstReadNr
+     * @param lastReadNr  inclusive.
+     * @return chunk data from firstReadNr to lastReadNr, a missing chunk fails the iteration.
+     */
+    Iterable<byte[]> read(GridFile gridFile, int firstReadNr, int lastReadNr) {
+        if (null != gridFile.inline()) {
+            // an inlined file is never larger than one chunk.
+            return firstReadNr == 0 && lastReadNr >= 0 ? Collections.singletonList(gridFile.inline()) : Collections.emptyList();
+        }
+        if (null != gridFile.blocks()) {
+            return () -> new BlockIterator(gridFile, firstReadNr, lastReadNr);
+        }
+        return () -> new ChunkIterator(gridFile, firstReadNr, lastReadNr);
+    }
+
+    /**
+     * chunks are read as GridFileChunk and binary values of documents are decoded as BsonBinary,
+     * neither copies the data the way Binary does on construction and on access.
+     *
+     * @param defaults
+     * @return codec registry of the chunk and block collections.
+     */
+    static CodecRegistry codecRegistry(CodecRegistry defaults) {
+        return CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new GridFileChunkCodec()),
+                CodecRegistries.fromProviders(new DocumentCodecProvider(new BsonTypeClassMap(Collections.singletonMap(BsonType.BINARY, BsonBinary.class)))),
+                defaults
+        );
+    }
+
+    /**
+     * @param fileChunk
+     * @param gridFile
+     * @return chunk data decoded by the file codec with its pending patches applied.
+     */
+    static byte[] data(GridFileChunk fileChunk, GridFile gridFile) {
+        byte[] data = null == fileChunk.data ? new byte[0] : gridFile.codec().decode(fileChunk.data, (int) gridFile.chunkSize());
+        for (int i = 0; i < fileChunk.patchOffsets.length; i++) {
+            int offset = fileChunk.patchOffsets[i];
+            byte[] patchData = fileChunk.patchData[i];
+            if (offset + patchData.length > data.length) {
+                data = Arrays.copyOf(data, offset + patchData.length);
+            }
+            System.arraycopy(patchData, 0, data, offset, patchData.length);
+        }
+        return data;
+    }
+
+    private class ChunkIterator implements Iterator<byte[]> {
+        private final GridFile gridFile;
+        private final ObjectId id;
+        private final int lastReadNr;
+        private int readNr;
+
+        private MongoCursor<GridFileChunk> cursor;
+        private int cursorLastNr;
+
+        private ChunkIterator(GridFile gridFile, int firstReadNr, int lastReadNr) {
+            this.gridFile = gridFile;
+            this.id = gridFile.chunksId();
+            this.readNr = firstReadNr;
+            this.lastReadNr = lastReadNr;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return readNr <= lastReadNr;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            byte[] chunk = null;
+            if (null == cursor) {
+                chunk = cache.get(id, readNr);
+                if (null == chunk) {
+                    openCursor();
+                }
+            }
+            if (null == chunk) {
+                chunk = readCursor();
+            }
+
+            readNr++;
+            return chunk;
+        }
+
+        private void openCursor() {
+            cursorLastNr = readNr;
+            while (cursorLastNr < lastReadNr && !cache.contains(id, cursorLastNr + 1)) {
+                cursorLastNr++;
+            }
+
+            Document filter = new Document("files_id", id).append("n", new Document("$gte", readNr).append("$lte", cursorLastNr));
+            cursor = chunkCollection.find(filter, GridFileChunk.class).sort(new Document("n", 1)).batchSize(cursorLastNr - readNr + 1).iterator();
+        }
+
+        private byte[] readCursor() {
+            if (!cursor.hasNext()) {
+                closeCursor();
+                throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+            }
+
+            GridFileChunk fileChunk = cursor.next();
+            int n = fileChunk.n;
+            if (n != readNr) {
+                closeCursor();
+                throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+            }
+
+            byte[] chunk = data(fileChunk, gridFile);
+            cache.put(id, n, chunk);
+            if (n == cursorLastNr) {
+                closeCursor();
+            }
+            return chunk;
+        }
+
+        private void closeCursor() {
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    private class BlockIterator implements Iterator<byte[]> {
+        private final GridFile gridFile;
+        private final ObjectId id;
+        private final int chunkSize;
+        private final long readEnd;
+        private final int lastReadNr;
+        private int readNr;
+
+        private Map<String, byte[]> window = new HashMap<>();
+        private long windowEnd = -1;
+
+        private BlockIterator(GridFile gridFile, int firstReadNr, int lastReadNr) {
+            this.gridFile = gridFile;
+            this.id = gridFile.id();
+            this.chunkSize = (int) gridFile.chunkSize();
+            this.readEnd = Math.min((long) (lastReadNr + 1) * chunkSize, gridFile.size());
+            this.readNr = firstReadNr;
+            this.lastReadNr = lastReadNr;
+        }
+
+        @Override
+        public boolean hasNext() {
+            return readNr <= lastReadNr;
+        }
+
+        @Override
+        public byte[] next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+
+            byte[] chunk = cache.get(id, readNr);
+            if (null == chunk) {
+                chunk = readChunk();
+                cache.put(id, readNr, chunk);
+            }
+            readNr++;
+            return chunk;
+        }
+
+        private byte[] readChunk() {
+            long chunkStart = (long) readNr * chunkSize;
+            long chunkEnd = Math.min(chunkStart + chunkSize, gridFile.size());
+            long[] offsets = gridFile.blockOffsets();
+            if (chunkEnd > offsets[offsets.length - 1]) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", id));
+            }
+            if (chunkEnd > windowEnd) {
+                loadWindow(chunkStart);
+            }
+
+            byte[] chunk = new byte[(int) (chunkEnd - chunkStart)];
+            for (int i = blockIndex(chunkStart); i < offsets.length - 1 && offsets[i] < chunkEnd; i++) {
+                byte[] block = window.get(gridFile.blocks().get(i));
+                long copyStart = Math.max(chunkStart, offsets[i]);
+                long copyEnd = Math.min(chunkEnd, offsets[i + 1]);
+                System.arraycopy(block, (int) (copyStart - offsets[i]), chunk, (int) (copyStart - chunkStart), (int) (copyEnd - copyStart));
+            }
+            return chunk;
+        }
+
+        /**
+         * fetch the blocks of the next chunks in one query, the blocks of earlier chunks are dropped.
+         */
+        private void loadWindow(long chunkStart) {
+            long[] offsets = gridFile.blockOffsets();
+            long end = Math.min(readEnd, chunkStart + Math.max(chunkSize, BLOCK_WINDOW_BYTES));
+            Set<String> hashes = new HashSet<>();
+            int i = blockIndex(chunkStart);
+            for (; i < offsets.length - 1 && offsets[i] < end; i++) {
+                hashes.add(gridFile.blocks().get(i));
+            }
+
+            window = blocks.read(hashes);
+            if (window.size() != hashes.size()) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", id));
+            }
+            windowEnd = offsets[i];
+        }
+
+        private int blockIndex(long offset) {
+            long[] offsets = gridFile.blockOffsets();
+            int i = Arrays.binarySearch(offsets, offset);
+            return i >= 0 ? i : -i - 2;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
+/**
+ * writes a file as content defined blocks, a block already stored by any file only gains a reference.
+ * the block manifest lives in the files document, which bounds a file to roughly 10GB.
+ *
+ * @author siuming
+ */
+final class GridFileDWrite {
+    private final MongoCollection<Document> filesCollection;
+    private final GridFileBlocks blocks;
+    private final int chunkSize;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+
+    GridFileDWrite(MongoCollection<Document> filesCollection, GridFileBlocks blocks, int chunkSize, int batchBytes, Executor executor, int writeWindow) {
+        this.filesCollection = filesCollection;
+        this.blocks = blocks;
+        this.chunkSize = chunkSize;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+    }
+
+    /**
+     * @param md5    expected md5, the computed one is stored when null or empty.
+     * @param sha256 expected sha-256, checked when not null or empty.
+     */
+    void exec(ObjectId id, String name, String md5, String sha256, long size, Document metadata, InputStream data) {
+        List<String> referenced = Collections.synchronizedList(new ArrayList<>());
+        GridFileDigest digest = new GridFileDigest(executor, batchBytes);
+        List<Document> manifest;
+        try {
+            manifest = writeBlocks(size, data, referenced, digest);
+            digest.finish();
+            digest.check(md5, sha256);
+            writeFile(id, name, digest.md5(), digest.sha256(), size, metadata, manifest);
+        } catch (RuntimeException e) {
+            blocks.release(new ArrayList<>(referenced));
+            throw e;
+        }
+    }
+
+    private List<Document> writeBlocks(long size, InputStream data, List<String> referenced, GridFileDigest digest) {
+        List<Document> manifest = new ArrayList<>();
+        GridFileChunker chunker = new GridFileChunker(data);
+        GridFileWindow<Void> window = new GridFileWindow<>(executor, writeWindow);
+        MessageDigest blockDigest = GridFileDigest.digest("SHA-256");
+
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        Map<String, Integer> batchRefs = new LinkedHashMap<>();
+        int batchedBytes = 0;
+        long writeBytes = 0;
+        try {
+            for (byte[] block = chunker.next(); null != block; block = chunker.next()) {
+                writeBytes = writeBytes + block.length;
+                if (writeBytes > size) {
+                    throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, writeBytes));
+                }
+
+                if (!batch.isEmpty() && batchedBytes + block.length > batchBytes) {
+                    writeBatch(window, batch, batchRefs, referenced);
+                    batch = new LinkedHashMap<>();
+                    batchRefs = new LinkedHashMap<>();
+                    batchedBytes = 0;
+                }
+
+                digest.update(block);
+                String hash = GridFileDigest.hex(blockDigest.digest(block));
+                if (null == batch.put(hash, block)) {
+                    batchedBytes = batchedBytes + block.length;
+                }
+                batchRefs.merge(hash, 1, Integer::sum);
+                manifest.add(new Document("_id", hash).append("length", block.length));
+            }
+
+            if (!batch.isEmpty()) {
+                writeBatch(window, batch, batchRefs, referenced);
+            }
+            while (!window.isEmpty()) {
+                window.take();
+            }
+            return manifest;
+        } catch (IOException e) {
+            window.cancel();
+            throw new GridFsException(e);
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
+    }
+
+    private void writeBatch(GridFileWindow<Void> window, Map<String, byte[]> batch, Map<String, Integer> batchRefs, List<String> referenced) {
+        while (window.isFull()) {
+            window.take();
+        }
+        window.submit(() -> {
+            blocks.reference(batch, batchRefs);
+            for (Map.Entry<String, Integer> ref : batchRefs.entrySet()) {
+                for (int i = 0; i < ref.getValue(); i++) {
+                    referenced.add(ref.getKey());
+                }
+            }
+            return null;
+        });
+    }
+
+    private void writeFile(ObjectId id, String name, String md5, String sha256, long size, Document metadata, List<Document> manifest) {
+        Document fileDocument = new Document("_id", id)
+                .append("length", size)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", md5)
+                .append("sha256", sha256)
+                .append("filename", name)
+                .append("blocks", manifest);
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+        filesCollection.insertOne(fileDocument);
+    }
+}
@@ -11,14 +11,30 @@ import org.bson.types.ObjectId;
 final class GridFileDelete {
     private final MongoCollection<Document> filesCollection;
     private final MongoCollection<Document> chunkCollection;
+    private final GridFileBlocks blocks;
+    private final GridFileChunkRefs refs;
 
-    GridFileDelete(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
+    GridFileDelete(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, GridFileBlocks blocks, GridFileChunkRefs refs) {
         this.filesCollection = filesCollection;
         this.chunkCollection = chunkCollection;
+        this.blocks = blocks;
+        this.refs = refs;
     }
 
     void exec(ObjectId id) {
-        filesCollection.deleteOne(Filters.eq("_id", id));
-        chunkCollection.deleteMany(Filters.eq("files_id", id));
+        Document doc = filesCollection.findOneAndDelete(Filters.eq("_id", id));
+        if (null == doc) {
+            // chunks left behind by a failed upload, unless other files still read them.
+            if (null == filesCollection.find(Filters.eq("chunks_id", id)).first()) {
+                chunkCollection.deleteMany(Filters.eq("files_id", id));
+            }
+            return;
+        }
+
+        ObjectId chunksId = null == doc.getObjectId("chunks_id") ? id : doc.getObjectId("chunks_id");
+        if (null == doc.get("data") && !refs.release(chunksId)) {
+            chunkCollection.deleteMany(Filters.eq("files_id", chunksId));
+        }
+        blocks.releaseManifest(doc);
     }
 }
@@ -3,6 +3,7 @@ package gridfs.client;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
 import org.bson.Document;
+import org.bson.types.ObjectId;
 
 /**
  * @author siuming
@@ -10,16 +11,28 @@ import org.bson.Document;
 final class GridFileDelete0 {
     private final MongoCollection<Document> filesCollection;
     private final MongoCollection<Document> chunkCollection;
+    private final GridFileBlocks blocks;
+    private final GridFileChunkRefs refs;
 
-    GridFileDelete0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
+    GridFileDelete0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, GridFileBlocks blocks, GridFileChunkRefs refs) {
         this.filesCollection = filesCollection;
         this.chunkCollection = chunkCollection;
+        this.blocks = blocks;
+        this.refs = refs;
     }
 
-    void exec(String md5) {
+    ObjectId exec(String md5) {
         Document doc = filesCollection.findOneAndDelete(Filters.eq("md5", md5));
-        if (null != doc) {
-            chunkCollection.deleteMany(Filters.eq("files_id", doc.getObjectId("_id")));
+        if (null == doc) {
+            return null;
         }
+
+        ObjectId id = doc.getObjectId("_id");
+        ObjectId chunksId = null == doc.getObjectId("chunks_id") ? id : doc.getObjectId("chunks_id");
+        if (null == doc.get("data") && !refs.release(chunksId)) {
+            chunkCollection.deleteMany(Filters.eq("files_id", chunksId));
+        }
+        blocks.releaseManifest(doc);
+        return id;
     }
 }
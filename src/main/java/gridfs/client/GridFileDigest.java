@@ -0,0 +1,126 @@
+package gridfs.client;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * md5 and sha-256 of an upload, updated in upload order on the executor while the reading thread goes on.
+ * the reading thread digests itself once more than maxPendingBytes are queued, and whatever is left on finish.
+ *
+ * @author siuming
+ */
+final class GridFileDigest {
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private final MessageDigest md5 = digest("MD5");
+    private final MessageDigest sha256 = digest("SHA-256");
+    private final Executor executor;
+    private final long maxPendingBytes;
+
+    private final Queue<Object> pending = new ConcurrentLinkedQueue<>();
+    private final AtomicLong pendingBytes = new AtomicLong();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+    private final ReentrantLock lock = new ReentrantLock();
+
+    private String md5Hex;
+    private String sha256Hex;
+
+    GridFileDigest(Executor executor, long maxPendingBytes) {
+        this.executor = executor;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    /**
+     * @param data never changed by the caller afterwards.
+     */
+    void update(byte[] data) {
+        pending.add(data);
+        if (pendingBytes.addAndGet(data.length) > maxPendingBytes) {
+            drain();
+        } else if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * @param action run once the data passed so far is digested.
+     */
+    void after(Runnable action) {
+        pending.add(action);
+        if (scheduled.compareAndSet(false, true)) {
+            executor.execute(this::drain);
+        }
+    }
+
+    /**
+     * digest the remaining data, the digests are available afterwards.
+     */
+    void finish() {
+        drain();
+        md5Hex = hex(md5.digest());
+        sha256Hex = hex(sha256.digest());
+    }
+
+    /**
+     * @param expectedMd5    ignored when null or empty.
+     * @param expectedSha256 ignored when null or empty.
+     */
+    void check(String expectedMd5, String expectedSha256) {
+        if (null != expectedMd5 && !expectedMd5.isEmpty() && !expectedMd5.equalsIgnoreCase(md5Hex)) {
+            throw new GridFsException(String.format("md5 mismatch[expected=%s, actual=%s].", expectedMd5, md5Hex));
+        }
+        if (null != expectedSha256 && !expectedSha256.isEmpty() && !expectedSha256.equalsIgnoreCase(sha256Hex)) {
+            throw new GridFsException(String.format("sha256 mismatch[expected=%s, actual=%s].", expectedSha256, sha256Hex));
+        }
+    }
+
+    String md5() {
+        return md5Hex;
+    }
+
+    String sha256() {
+        return sha256Hex;
+    }
+
+    private void drain() {
+        lock.lock();
+        try {
+            scheduled.set(false);
+            for (Object next = pending.poll(); null != next; next = pending.poll()) {
+                if (next instanceof Runnable) {
+                    ((Runnable) next).run();
+                    continue;
+                }
+                byte[] data = (byte[]) next;
+                md5.update(data);
+                sha256.update(data);
+                pendingBytes.addAndGet(-data.length);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static String hex(byte[] bytes) {
+        char[] chars = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            chars[i * 2] = HEX[(bytes[i] >> 4) & 0xf];
+            chars[i * 2 + 1] = HEX[bytes[i] & 0xf];
+        }
+        return new String(chars);
+    }
+
+    static MessageDigest digest(String algorithm) {
+        try {
+            return MessageDigest.getInstance(algorithm);
+        } catch (NoSuchAlgorithmException e) {
+            throw new GridFsException(e);
+        }
+    }
+}
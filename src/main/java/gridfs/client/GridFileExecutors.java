@@ -0,0 +1,32 @@
+package gridfs.client;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * executors for blocking operations, virtual threads are looked up by reflection to stay java 8 compatible.
+ *
+ * @author siuming
+ */
+final class GridFileExecutors {
+    private GridFileExecutors() {
+    }
+
+    static ExecutorService newFixedThreadPool(int maxThreads) {
+        return Executors.newFixedThreadPool(maxThreads);
+    }
+
+    /**
+     * @param maxThreads threads of the fixed pool used when the jdk has no virtual threads.
+     * @return
+     */
+    static ExecutorService newVirtualThreadPerTaskExecutor(int maxThreads) {
+        try {
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return newFixedThreadPool(maxThreads);
+        }
+    }
+}
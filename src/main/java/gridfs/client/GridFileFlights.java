@@ -0,0 +1,68 @@
+package gridfs.client;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * requests of one key made while a request of that key is running share its result instead of fetching again.
+ * a key is released as soon as its request completes, results are never kept.
+ *
+ * @author siuming
+ */
+final class GridFileFlights<K, V> {
+    private final boolean enabled;
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+
+    /**
+     * @param enabled every request fetches on its own when it is false.
+     */
+    GridFileFlights(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @param key
+     * @param fetch started unless a request of key is running.
+     * @return a future of its own per request, completed with the shared result.
+     */
+    CompletableFuture<V> run(K key, Supplier<CompletableFuture<V>> fetch) {
+        if (!enabled) {
+            return fetch.get();
+        }
+
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> running = flights.putIfAbsent(key, flight);
+        if (null != running) {
+            return running.thenApply(Function.identity());
+        }
+
+        try {
+            fetch.get().whenComplete((value, e) -> {
+                flights.remove(key, flight);
+                if (null != e) {
+                    flight.completeExceptionally(e);
+                } else {
+                    flight.complete(value);
+                }
+            });
+        } catch (RuntimeException e) {
+            flights.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return flight.thenApply(Function.identity());
+    }
+
+    /**
+     * requests made afterwards with a released key fetch again, running requests still complete their callers.
+     *
+     * @param keys
+     */
+    void release(Predicate<K> keys) {
+        if (enabled) {
+            flights.keySet().removeIf(keys);
+        }
+    }
+}
@@ -1,38 +1,86 @@
 package gridfs.client;
 
 import com.mongodb.client.MongoCollection;
-import org.bson.BsonDateTime;
+import org.bson.BsonBinary;
 import org.bson.Document;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
 
 /**
  * @author siuming
  */
 final class GridFileGet {
     private final MongoCollection<Document> filesCollection;
+    private final GridFileCache cache;
 
-    GridFileGet(MongoCollection<Document> filesCollection) {
+    GridFileGet(MongoCollection<Document> filesCollection, GridFileCache cache) {
         this.filesCollection = filesCollection;
+        this.cache = cache;
     }
 
     GridFile exec(ObjectId id) {
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
-        if (null == gridFile) {
-            return null;
+        GridFile cached = cache.get(id);
+        if (null != cached) {
+            return cached;
         }
 
+        long stamp = cache.begin();
+        try {
+            Document gridFile = filesCollection.find(new Document("_id", id)).first();
+            if (null == gridFile) {
+                return null;
+            }
+
+            GridFile file = toGridFile(gridFile);
+            cache.put(stamp, file);
+            return file;
+        } finally {
+            cache.end(stamp);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    static GridFile toGridFile(Document gridFile) {
         Document metadata = gridFile.get("metadata", Document.class);
+        List<Document> manifest = (List<Document>) gridFile.get("blocks");
+        List<String> blocks = null;
+        long[] blockOffsets = null;
+        if (null != manifest) {
+            blocks = new ArrayList<>(manifest.size());
+            blockOffsets = new long[manifest.size() + 1];
+            for (int i = 0; i < manifest.size(); i++) {
+                blocks.add(manifest.get(i).getString("_id"));
+                blockOffsets[i + 1] = blockOffsets[i] + manifest.get(i).get("length", Number.class).longValue();
+            }
+        }
         return GridFile.newBuilder()
                 .id(gridFile.getObjectId("_id"))
+                .chunksId(gridFile.getObjectId("chunks_id"))
                 .size(gridFile.get("length", Number.class).longValue())
                 .chunkSize(gridFile.get("chunkSize", Number.class).intValue())
                 .updateDate(gridFile.get("uploadDate", Date.class).getTime())
                 .md5(gridFile.getString("md5"))
+                .sha256(gridFile.getString("sha256"))
                 .filename(gridFile.getString("filename"))
                 .metadata(null == metadata ? Collections.emptyMap() : metadata)
+                .codec(GridFsCodec.of(gridFile.getString("codec")))
+                .blocks(blocks, blockOffsets)
+                .inline(inline(gridFile.get("data")))
                 .build();
     }
+
+    private static byte[] inline(Object data) {
+        if (data instanceof Binary) {
+            return ((Binary) data).getData();
+        }
+        if (data instanceof BsonBinary) {
+            return ((BsonBinary) data).getData();
+        }
+        return null;
+    }
 }
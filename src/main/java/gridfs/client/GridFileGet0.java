@@ -3,34 +3,36 @@ package gridfs.client;
 import com.mongodb.client.MongoCollection;
 import org.bson.Document;
 
-import java.util.Collections;
-import java.util.Date;
-
 /**
  * @author siuming
  */
 final class GridFileGet0 {
     private final MongoCollection<Document> filesCollection;
+    private final GridFileCache cache;
 
-    GridFileGet0(MongoCollection<Document> filesCollection) {
+    GridFileGet0(MongoCollection<Document> filesCollection, GridFileCache cache) {
         this.filesCollection = filesCollection;
+        this.cache = cache;
     }
 
     GridFile exec(String md5) {
-        Document gridFile = filesCollection.find(new Document("md5", md5)).first();
-        if (null == gridFile) {
-            return null;
+        GridFile cached = cache.get0(md5);
+        if (null != cached) {
+            return cached;
         }
 
-        Document metadata = gridFile.get("metadata", Document.class);
-        return GridFile.newBuilder()
-                .id(gridFile.getObjectId("_id"))
-                .size(gridFile.get("length", Number.class).longValue())
-                .chunkSize(gridFile.get("chunkSize", Number.class).intValue())
-                .updateDate(gridFile.get("uploadDate", Date.class).getTime())
-                .md5(gridFile.getString("md5"))
-                .filename(gridFile.getString("filename"))
-                .metadata(null == metadata ? Collections.emptyMap() : metadata)
-                .build();
+        long stamp = cache.begin();
+        try {
+            Document gridFile = filesCollection.find(new Document("md5", md5)).first();
+            if (null == gridFile) {
+                return null;
+            }
+
+            GridFile file = GridFileGet.toGridFile(gridFile);
+            cache.put(stamp, file);
+            return file;
+        } finally {
+            cache.end(stamp);
+        }
     }
 }
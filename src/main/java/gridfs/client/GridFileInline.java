@@ -0,0 +1,147 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.Binary;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * stores files of at most inlineBytes in their files document, an inlined file has no chunks.
+ *
+ * @author siuming
+ */
+final class GridFileInline {
+    private final MongoCollection<Document> filesCollection;
+    private final int chunkSize;
+    private final int inlineBytes;
+
+    /**
+     * @param filesCollection
+     * @param chunkSize
+     * @param inlineBytes     files are never inlined when it is 0, it is capped at chunkSize.
+     */
+    GridFileInline(MongoCollection<Document> filesCollection, int chunkSize, int inlineBytes) {
+        this.filesCollection = filesCollection;
+        this.chunkSize = chunkSize;
+        this.inlineBytes = Math.min(inlineBytes, chunkSize);
+    }
+
+    boolean accepts(long size) {
+        return inlineBytes > 0 && size <= inlineBytes;
+    }
+
+    /**
+     * @param data shorter data is padded with zeros up to size.
+     */
+    void write(ObjectId id, String name, String md5, String sha256, long size, Document metadata, byte[] data) {
+        if (data.length > size) {
+            throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, data.length));
+        }
+
+        Document fileDocument = new Document("_id", id)
+                .append("length", size)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", md5)
+                .append("filename", name)
+                .append("data", new BsonBinary(data.length == size ? data : Arrays.copyOf(data, (int) size)));
+        if (null != sha256) {
+            fileDocument.append("sha256", sha256);
+        }
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+        filesCollection.insertOne(fileDocument);
+    }
+
+    /**
+     * @param md5    expected md5, the computed one is stored when null or empty.
+     * @param sha256 expected sha-256, checked when not null or empty.
+     */
+    void write0(ObjectId id, String name, String md5, String sha256, long size, Document metadata, InputStream data) {
+        byte[] content = read(data, (int) size);
+        if (content.length > size) {
+            throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, content.length));
+        }
+
+        GridFileDigest digest = new GridFileDigest(Runnable::run, 0);
+        digest.update(content);
+        digest.finish();
+        digest.check(md5, sha256);
+        write(id, name, digest.md5(), digest.sha256(), size, metadata, content);
+    }
+
+    /**
+     * replace a range of an inlined file, the files document is only updated when nobody changed it since it was read.
+     * gridFile may come from the cache, stale data only fails the first update and is read again, the caller invalidates the cached file once an update wins.
+     */
+    void modify(GridFile gridFile, long offset, byte[] data) {
+        ObjectId id = gridFile.id();
+        byte[] previous = gridFile.inline();
+        for (; ; ) {
+            if (offset < 0 || previous.length < offset + data.length) {
+                throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, previous.length));
+            }
+
+            byte[] content = previous.clone();
+            System.arraycopy(data, 0, content, (int) offset, data.length);
+            if (filesCollection.updateOne(
+                    Filters.and(Filters.eq("_id", id), Filters.eq("data", new Binary(previous))),
+                    new Document("$set", new Document("data", new BsonBinary(content)))
+            ).getMatchedCount() > 0) {
+                return;
+            }
+
+            Document fileDocument = filesCollection.find(Filters.eq("_id", id)).projection(new Document("data", 1)).first();
+            if (null == fileDocument) {
+                throw new GridFsException(String.format("file[id=%s] not found.", id));
+            }
+            if (null == fileDocument.get("data")) {
+                throw new GridFsException(String.format("file[id=%s] not inlined any more.", id));
+            }
+            previous = fileDocument.get("data", Binary.class).getData();
+        }
+    }
+
+    /**
+     * @param data read up to the end of the file, a longer stream fails the modify.
+     */
+    void modify0(GridFile gridFile, long offset, InputStream data) {
+        long fileSize = gridFile.size();
+        if (offset < 0 || fileSize < offset) {
+            throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", gridFile.id(), fileSize));
+        }
+        byte[] content = read(data, (int) (fileSize - offset));
+        if (content.length > fileSize - offset) {
+            throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", gridFile.id(), fileSize));
+        }
+        if (content.length > 0) {
+            modify(gridFile, offset, content);
+        }
+    }
+
+    // reads up to maxLength + 1 bytes so that an overflow is seen.
+    private static byte[] read(InputStream data, int maxLength) {
+        byte[] buf = new byte[maxLength + 1];
+        int readBytes = 0;
+        try {
+            while (readBytes < buf.length) {
+                int read = data.read(buf, readBytes, buf.length - readBytes);
+                if (read == -1) {
+                    break;
+                }
+                readBytes = readBytes + read;
+            }
+        } catch (IOException e) {
+            throw new GridFsException(e);
+        }
+        return Arrays.copyOf(buf, readBytes);
+    }
+}
@@ -0,0 +1,75 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+/**
+ * stores an upload as a files document referring to the chunks of a stored file with the same md5 and length, no chunk is written.
+ *
+ * @author siuming
+ */
+final class GridFileLink {
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final GridFileChunkRefs refs;
+
+    GridFileLink(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, GridFileChunkRefs refs) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.refs = refs;
+    }
+
+    /**
+     * @return false when no stored file matches and the upload has to write its chunks.
+     */
+    boolean exec(ObjectId id, String name, String md5, long size, Document metadata) {
+        if (null == md5 || md5.isEmpty()) {
+            return false;
+        }
+
+        Document source = filesCollection.find(Filters.and(Filters.eq("md5", md5), Filters.eq("length", size), Filters.exists("blocks", false), Filters.exists("data", false))).first();
+        if (null == source) {
+            return false;
+        }
+
+        ObjectId chunksId = null == source.getObjectId("chunks_id") ? source.getObjectId("_id") : source.getObjectId("chunks_id");
+        refs.reference(chunksId);
+
+        // a delete removes the files document before releasing, so a chunk set still referred to here keeps its chunks.
+        if (null == owner(chunksId)) {
+            // the last delete released the reference taken here and kept the chunks, nobody else removes them.
+            if (!refs.release(chunksId) && null == owner(chunksId)) {
+                chunkCollection.deleteMany(Filters.eq("files_id", chunksId));
+            }
+            return false;
+        }
+
+        Document fileDocument = new Document("_id", id)
+                .append("length", size)
+                .append("chunkSize", source.get("chunkSize"))
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", md5)
+                .append("filename", name)
+                .append("chunks_id", chunksId);
+        if (null != source.getString("codec")) {
+            fileDocument.append("codec", source.getString("codec"));
+        }
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+        try {
+            filesCollection.insertOne(fileDocument);
+        } catch (RuntimeException e) {
+            refs.release(chunksId);
+            throw e;
+        }
+        return true;
+    }
+
+    private Document owner(ObjectId chunksId) {
+        return filesCollection.find(Filters.or(Filters.eq("_id", chunksId), Filters.eq("chunks_id", chunksId))).projection(new Document("_id", 1)).first();
+    }
+}
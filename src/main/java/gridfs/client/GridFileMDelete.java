@@ -0,0 +1,168 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * deletes files batchIds at a time, the files documents of a batch are removed with one query and their chunks with another, inlined files have no chunks to sweep.
+ * files sharing chunks or stored as blocks are deleted one by one, as a single delete would.
+ *
+ * @author siuming
+ */
+final class GridFileMDelete {
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final GridFileBlocks blocks;
+    private final GridFileChunkRefs refs;
+    private final GridFileCache cache;
+    private final GridFileChunkCache chunkCache;
+    private final int batchIds;
+    private final long sweepPause;
+
+    GridFileMDelete(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, GridFileBlocks blocks, GridFileChunkRefs refs, GridFileCache cache, GridFileChunkCache chunkCache, int batchIds, long sweepPause) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.blocks = blocks;
+        this.refs = refs;
+        this.cache = cache;
+        this.chunkCache = chunkCache;
+        this.batchIds = batchIds;
+        this.sweepPause = sweepPause;
+    }
+
+    GridFsDeleteResult exec(Collection<ObjectId> ids) {
+        long[] deleted = new long[2];
+        List<ObjectId> batch = new ArrayList<>();
+        boolean first = true;
+        for (ObjectId id : new LinkedHashSet<>(ids)) {
+            batch.add(id);
+            if (batch.size() >= batchIds) {
+                deleteBatch(batch, first, deleted);
+                batch = new ArrayList<>();
+                first = false;
+            }
+        }
+        if (!batch.isEmpty()) {
+            deleteBatch(batch, first, deleted);
+        }
+        return new GridFsDeleteResult(deleted[0], deleted[1]);
+    }
+
+    // deleted holds the files and chunks removed so far.
+    private void deleteBatch(List<ObjectId> ids, boolean first, long[] deleted) {
+        if (!first) {
+            pause();
+        }
+
+        List<Document> docs = new ArrayList<>();
+        filesCollection.find(Filters.in("_id", ids)).projection(new Document("_id", 1).append("chunks_id", 1).append("blocks", 1)).into(docs);
+
+        // inlined files have no chunks, only their ids are read so that the inlined data is not fetched.
+        Set<ObjectId> inlined = new LinkedHashSet<>();
+        for (Document doc : filesCollection.find(Filters.and(Filters.in("_id", ids), Filters.exists("data"))).projection(new Document("_id", 1))) {
+            inlined.add(doc.getObjectId("_id"));
+        }
+
+        Set<ObjectId> missing = new LinkedHashSet<>(ids);
+        Set<ObjectId> plain = new LinkedHashSet<>();
+        for (Document doc : docs) {
+            missing.remove(doc.getObjectId("_id"));
+            if (inlined.contains(doc.getObjectId("_id"))) {
+                continue;
+            }
+            if (null == doc.get("chunks_id") && null == doc.get("blocks")) {
+                plain.add(doc.getObjectId("_id"));
+            }
+        }
+
+        List<ObjectId> sweep = new ArrayList<>();
+        if (!missing.isEmpty()) {
+            // chunks left behind by failed uploads, unless other files still read them.
+            for (Document alias : filesCollection.find(Filters.in("chunks_id", missing)).projection(new Document("chunks_id", 1))) {
+                missing.remove(alias.getObjectId("chunks_id"));
+            }
+            sweep.addAll(missing);
+        }
+
+        Set<ObjectId> shared = plain.isEmpty() ? new HashSet<>() : refs.shared(plain);
+        List<String> hashes = new ArrayList<>();
+        for (Document doc : docs) {
+            ObjectId id = doc.getObjectId("_id");
+            if (inlined.contains(id)) {
+                continue;
+            }
+            if (!plain.contains(id) || shared.contains(id)) {
+                deleteOne(id, hashes, deleted);
+            }
+        }
+        plain.removeAll(shared);
+
+        if (!inlined.isEmpty()) {
+            deleted[0] = deleted[0] + filesCollection.deleteMany(Filters.in("_id", inlined)).getDeletedCount();
+        }
+
+        if (!plain.isEmpty()) {
+            deleted[0] = deleted[0] + filesCollection.deleteMany(Filters.in("_id", plain)).getDeletedCount();
+            // files documents sharing these chunks inserted since the check above.
+            Set<ObjectId> linked = refs.shared(plain);
+            for (ObjectId id : plain) {
+                if (!linked.contains(id) || !refs.release(id)) {
+                    sweep.add(id);
+                }
+            }
+        }
+        if (!sweep.isEmpty()) {
+            deleted[1] = deleted[1] + chunkCollection.deleteMany(Filters.in("files_id", sweep)).getDeletedCount();
+        }
+        if (!hashes.isEmpty()) {
+            blocks.release(hashes);
+        }
+
+        for (ObjectId id : ids) {
+            cache.invalidate(id);
+            chunkCache.invalidate(id);
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deleteOne(ObjectId id, List<String> hashes, long[] deleted) {
+        Document doc = filesCollection.findOneAndDelete(Filters.eq("_id", id));
+        if (null == doc) {
+            return;
+        }
+
+        deleted[0]++;
+        List<Document> manifest = (List<Document>) doc.get("blocks");
+        if (null != manifest) {
+            for (Document block : manifest) {
+                hashes.add(block.getString("_id"));
+            }
+        }
+        ObjectId chunksId = null == doc.getObjectId("chunks_id") ? id : doc.getObjectId("chunks_id");
+        if (!refs.release(chunksId)) {
+            deleted[1] = deleted[1] + chunkCollection.deleteMany(Filters.eq("files_id", chunksId)).getDeletedCount();
+        }
+    }
+
+    private void pause() {
+        if (sweepPause <= 0) {
+            return;
+        }
+
+        try {
+            Thread.sleep(sweepPause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GridFsException(e);
+        }
+    }
+}
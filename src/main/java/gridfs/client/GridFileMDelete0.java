@@ -0,0 +1,61 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author siuming
+ */
+final class GridFileMDelete0 {
+    private final MongoCollection<Document> filesCollection;
+    private final GridFileMDelete delete;
+    private final GridFileCache cache;
+    private final int batchIds;
+
+    GridFileMDelete0(MongoCollection<Document> filesCollection, GridFileMDelete delete, GridFileCache cache, int batchIds) {
+        this.filesCollection = filesCollection;
+        this.delete = delete;
+        this.cache = cache;
+        this.batchIds = batchIds;
+    }
+
+    /**
+     * @param md5s
+     * @return one file per md5 is deleted, as a single delete by md5 would.
+     */
+    GridFsDeleteResult exec(Collection<String> md5s) {
+        Map<String, ObjectId> ids = new LinkedHashMap<>();
+        List<String> batch = new ArrayList<>();
+        for (String md5 : new LinkedHashSet<>(md5s)) {
+            batch.add(md5);
+            if (batch.size() >= batchIds) {
+                find(batch, ids);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            find(batch, ids);
+        }
+
+        GridFsDeleteResult result = delete.exec(ids.values());
+        for (String md5 : md5s) {
+            cache.invalidate0(md5);
+        }
+        return result;
+    }
+
+    private void find(List<String> md5s, Map<String, ObjectId> ids) {
+        for (Document gridFile : filesCollection.find(Filters.in("md5", md5s)).projection(new Document("_id", 1).append("md5", 1))) {
+            ids.putIfAbsent(gridFile.getString("md5"), gridFile.getObjectId("_id"));
+        }
+    }
+}
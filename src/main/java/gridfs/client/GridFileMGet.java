@@ -0,0 +1,76 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author siuming
+ */
+final class GridFileMGet {
+    private final MongoCollection<Document> filesCollection;
+    private final GridFileCache cache;
+    private final int batchIds;
+
+    GridFileMGet(MongoCollection<Document> filesCollection, GridFileCache cache, int batchIds) {
+        this.filesCollection = filesCollection;
+        this.cache = cache;
+        this.batchIds = batchIds;
+    }
+
+    /**
+     * @param ids
+     * @return files found in ids order, ids not found are left out.
+     */
+    Map<ObjectId, GridFile> exec(Collection<ObjectId> ids) {
+        Map<ObjectId, GridFile> found = new HashMap<>();
+        List<ObjectId> batch = new ArrayList<>();
+        for (ObjectId id : new LinkedHashSet<>(ids)) {
+            GridFile cached = cache.get(id);
+            if (null != cached) {
+                found.put(id, cached);
+                continue;
+            }
+
+            batch.add(id);
+            if (batch.size() >= batchIds) {
+                find(batch, found);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            find(batch, found);
+        }
+
+        Map<ObjectId, GridFile> files = new LinkedHashMap<>();
+        for (ObjectId id : ids) {
+            GridFile file = found.get(id);
+            if (null != file) {
+                files.put(id, file);
+            }
+        }
+        return files;
+    }
+
+    private void find(List<ObjectId> ids, Map<ObjectId, GridFile> found) {
+        long stamp = cache.begin();
+        try {
+            for (Document gridFile : filesCollection.find(Filters.in("_id", ids))) {
+                GridFile file = GridFileGet.toGridFile(gridFile);
+                cache.put(stamp, file);
+                found.put(file.id(), file);
+            }
+        } finally {
+            cache.end(stamp);
+        }
+    }
+}
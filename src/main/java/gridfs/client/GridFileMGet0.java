@@ -0,0 +1,79 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author siuming
+ */
+final class GridFileMGet0 {
+    private final MongoCollection<Document> filesCollection;
+    private final GridFileCache cache;
+    private final int batchIds;
+
+    GridFileMGet0(MongoCollection<Document> filesCollection, GridFileCache cache, int batchIds) {
+        this.filesCollection = filesCollection;
+        this.cache = cache;
+        this.batchIds = batchIds;
+    }
+
+    /**
+     * @param md5s
+     * @return one file per md5 found in md5s order, md5s not found are left out.
+     */
+    Map<String, GridFile> exec(Collection<String> md5s) {
+        Map<String, GridFile> found = new HashMap<>();
+        List<String> batch = new ArrayList<>();
+        for (String md5 : new LinkedHashSet<>(md5s)) {
+            GridFile cached = cache.get0(md5);
+            if (null != cached) {
+                found.put(md5, cached);
+                continue;
+            }
+
+            batch.add(md5);
+            if (batch.size() >= batchIds) {
+                find(batch, found);
+                batch = new ArrayList<>();
+            }
+        }
+        if (!batch.isEmpty()) {
+            find(batch, found);
+        }
+
+        Map<String, GridFile> files = new LinkedHashMap<>();
+        for (String md5 : md5s) {
+            GridFile file = found.get(md5);
+            if (null != file) {
+                files.put(md5, file);
+            }
+        }
+        return files;
+    }
+
+    private void find(List<String> md5s, Map<String, GridFile> found) {
+        long stamp = cache.begin();
+        try {
+            for (Document gridFile : filesCollection.find(Filters.in("md5", md5s))) {
+                if (found.containsKey(gridFile.getString("md5"))) {
+                    continue;
+                }
+
+                GridFile file = GridFileGet.toGridFile(gridFile);
+                cache.put(stamp, file);
+                found.put(file.md5(), file);
+            }
+        } finally {
+            cache.end(stamp);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * downloads files batchIds at a time, the files of one chunk are read together with one chunk query per batch, inlined files need none.
+ * larger files are read one by one.
+ *
+ * @author siuming
+ */
+final class GridFileMRead {
+    private final GridFileMGet get;
+    private final GridFileRead read;
+    private final MongoCollection<Document> chunkCollection;
+    private final int batchIds;
+
+    GridFileMRead(GridFileMGet get, GridFileRead read, MongoCollection<Document> chunkCollection, int batchIds) {
+        this.get = get;
+        this.read = read;
+        this.chunkCollection = chunkCollection;
+        this.batchIds = batchIds;
+    }
+
+    /**
+     * @param ids
+     * @return file content in ids order, ids not found are left out.
+     */
+    Map<ObjectId, byte[]> exec(Collection<ObjectId> ids) {
+        Map<ObjectId, GridFile> files = get.exec(ids);
+
+        Map<ObjectId, byte[]> found = new HashMap<>();
+        Map<ObjectId, List<GridFile>> batch = new HashMap<>();
+        for (GridFile gridFile : files.values()) {
+            if (gridFile.size() == 0) {
+                found.put(gridFile.id(), new byte[0]);
+            } else if (null != gridFile.inline()) {
+                found.put(gridFile.id(), gridFile.inline().clone());
+            } else if (null != gridFile.blocks() || gridFile.size() > gridFile.chunkSize()) {
+                found.put(gridFile.id(), read.exec(gridFile));
+            } else {
+                batch.computeIfAbsent(gridFile.chunksId(), chunksId -> new ArrayList<>()).add(gridFile);
+                if (batch.size() >= batchIds) {
+                    readBatch(batch, found);
+                    batch = new HashMap<>();
+                }
+            }
+        }
+        if (!batch.isEmpty()) {
+            readBatch(batch, found);
+        }
+
+        Map<ObjectId, byte[]> contents = new LinkedHashMap<>();
+        for (ObjectId id : files.keySet()) {
+            contents.put(id, found.get(id));
+        }
+        return contents;
+    }
+
+    // chunksId to the files reading that chunk, aliases of one file share it.
+    private void readBatch(Map<ObjectId, List<GridFile>> batch, Map<ObjectId, byte[]> found) {
+        for (GridFileChunk fileChunk : chunkCollection.find(Filters.and(Filters.in("files_id", batch.keySet()), Filters.eq("n", 0)), GridFileChunk.class)) {
+            byte[] shared = null;
+            for (GridFile gridFile : batch.get(fileChunk.filesId)) {
+                byte[] data = GridFileChunks.data(fileChunk, gridFile);
+                if (data.length != gridFile.size()) {
+                    throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+                }
+                // data may be the chunk array itself, every file after the first gets its own copy.
+                if (data == shared) {
+                    data = data.clone();
+                }
+                if (null == shared) {
+                    shared = data;
+                }
+                found.put(gridFile.id(), data);
+            }
+        }
+
+        for (List<GridFile> gridFiles : batch.values()) {
+            for (GridFile gridFile : gridFiles) {
+                if (!found.containsKey(gridFile.id())) {
+                    throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+                }
+            }
+        }
+    }
+}
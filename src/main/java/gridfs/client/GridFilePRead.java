@@ -0,0 +1,78 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFilePRead {
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final Executor executor;
+
+    GridFilePRead(GridFileGet get, GridFileChunks chunks, Executor executor) {
+        this.get = get;
+        this.chunks = chunks;
+        this.executor = executor;
+    }
+
+    byte[] exec(ObjectId id, int concurrency, int prefetch) {
+        if (prefetch <= 0) {
+            throw new GridFsException(String.format("prefetch=%s must be positive.", prefetch));
+        }
+
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+
+        long fileSize = gridFile.size();
+        if (fileSize > Integer.MAX_VALUE) {
+            throw new GridFsException(String.format("file[id=%s] too large.", id));
+        }
+
+        byte[] fileContent = new byte[(int) fileSize];
+
+        int chunkSize = (int) gridFile.chunkSize();
+        int chunkNr = fileSize % chunkSize == 0 ? (int) fileSize / chunkSize : (int) ((fileSize / chunkSize) + 1);
+
+        long writeBytes = 0;
+        GridFileWindow<Integer> window = new GridFileWindow<>(executor, concurrency);
+        try {
+            for (int firstReadNr = 0; firstReadNr < chunkNr; firstReadNr = firstReadNr + prefetch) {
+                int readNr = firstReadNr;
+                int lastReadNr = Math.min(firstReadNr + prefetch, chunkNr) - 1;
+                while (window.isFull()) {
+                    writeBytes = writeBytes + window.take();
+                }
+                window.submit(() -> readChunks(gridFile, readNr, lastReadNr, chunkSize, fileContent));
+            }
+            while (!window.isEmpty()) {
+                writeBytes = writeBytes + window.take();
+            }
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
+
+        if (writeBytes != fileSize) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", id));
+        }
+        return fileContent;
+    }
+
+    private int readChunks(GridFile gridFile, int firstReadNr, int lastReadNr, int chunkSize, byte[] fileContent) {
+        int writeOffset = firstReadNr * chunkSize;
+        int writeBytes = 0;
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            if (writeOffset + writeBytes + chunk.length > fileContent.length) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+            }
+            System.arraycopy(chunk, 0, fileContent, writeOffset + writeBytes, chunk.length);
+            writeBytes = writeBytes + chunk.length;
+        }
+        return writeBytes;
+    }
+}
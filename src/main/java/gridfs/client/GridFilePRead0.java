@@ -0,0 +1,86 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFilePRead0 {
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final Executor executor;
+
+    GridFilePRead0(GridFileGet get, GridFileChunks chunks, Executor executor) {
+        this.get = get;
+        this.chunks = chunks;
+        this.executor = executor;
+    }
+
+    void exec(ObjectId id, OutputStream out, int concurrency, int prefetch) {
+        if (prefetch <= 0) {
+            throw new GridFsException(String.format("prefetch=%s must be positive.", prefetch));
+        }
+
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+
+        long fileSize = gridFile.size();
+        int chunkSize = (int) gridFile.chunkSize();
+        int chunkNr = fileSize % chunkSize == 0 ? (int) (fileSize / chunkSize) : (int) ((fileSize / chunkSize) + 1);
+
+        long writeBytes = 0;
+        GridFileWindow<List<byte[]>> window = new GridFileWindow<>(executor, concurrency);
+        try {
+            for (int firstReadNr = 0; firstReadNr < chunkNr; firstReadNr = firstReadNr + prefetch) {
+                int readNr = firstReadNr;
+                int lastReadNr = Math.min(firstReadNr + prefetch, chunkNr) - 1;
+                while (window.isFull()) {
+                    writeBytes = writeBytes + writeChunks(window.take(), out);
+                }
+                window.submit(() -> readChunks(gridFile, readNr, lastReadNr));
+            }
+            while (!window.isEmpty()) {
+                writeBytes = writeBytes + writeChunks(window.take(), out);
+            }
+            out.flush();
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        } catch (Exception e) {
+            window.cancel();
+            throw new GridFsException(e);
+        }
+
+        if (writeBytes != fileSize) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", id));
+        }
+    }
+
+    private List<byte[]> readChunks(GridFile gridFile, int firstReadNr, int lastReadNr) {
+        List<byte[]> readChunks = new ArrayList<>(lastReadNr - firstReadNr + 1);
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            readChunks.add(chunk);
+        }
+        return readChunks;
+    }
+
+    private long writeChunks(List<byte[]> chunks, OutputStream out) {
+        long writeBytes = 0;
+        try {
+            for (byte[] chunk : chunks) {
+                out.write(chunk);
+                writeBytes = writeBytes + chunk.length;
+            }
+        } catch (Exception e) {
+            throw new GridFsException(e);
+        }
+        return writeBytes;
+    }
+}
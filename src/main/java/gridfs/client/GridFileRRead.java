@@ -1,20 +1,17 @@
 package gridfs.client;
 
-import com.mongodb.client.MongoCollection;
-import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
 /**
  * @author siuming
  */
 final class GridFileRRead {
-    private final MongoCollection<Document> filesCollection;
-    private final MongoCollection<Document> chunkCollection;
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
 
-    GridFileRRead(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
-        this.filesCollection = filesCollection;
-        this.chunkCollection = chunkCollection;
+    GridFileRRead(GridFileGet get, GridFileChunks chunks) {
+        this.get = get;
+        this.chunks = chunks;
     }
 
     byte[] exec(ObjectId id, long offset, long size) {
@@ -22,13 +19,13 @@ final class GridFileRRead {
             return new byte[0];
         }
 
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
+        GridFile gridFile = get.exec(id);
         if (null == gridFile) {
             throw new GridFsException(String.format("file[id=%s] not found.", id));
         }
 
-        long fileSize = gridFile.get("length", Number.class).longValue();
-        if (fileSize < offset + size) {
+        long fileSize = gridFile.size();
+        if (offset < 0 || size < 0 || fileSize < offset + size) {
             throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
         }
         if (size > Integer.MAX_VALUE) {
@@ -37,42 +34,24 @@ final class GridFileRRead {
 
         byte[] fileContent = new byte[(int) size];
 
-        int chunkSize = gridFile.get("chunkSize", Number.class).intValue();
+        int chunkSize = (int) gridFile.chunkSize();
         int firstReadNr = (int) (offset / chunkSize);
         int firstReadOffset = (int) (offset % chunkSize);
-        int firstReadSize = (int) (size > chunkSize ? chunkSize - firstReadOffset : size - firstReadOffset);
-        int lastReadNr = (int) ((offset + size) / chunkSize);
-        int lastReadSize = (int) ((offset + size) % chunkSize);
+        int lastReadNr = (int) ((offset + size - 1) / chunkSize);
+        int lastReadSize = (int) ((offset + size - 1) % chunkSize) + 1;
 
         int writeNr = firstReadNr;
         int writeBytes = 0;
-        int batchSize = lastReadNr - firstReadNr + 1;
-
-        Document filter = new Document("files_id", id).append("n", new Document("$gte", firstReadNr).append("$lte", lastReadNr));
-        for (Document fileChunk : chunkCollection.find(filter).sort(new Document("n", 1)).batchSize(batchSize)) {
-            int n = fileChunk.getInteger("n");
-            if (n != writeNr) {
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            int readOffset = writeNr == firstReadNr ? firstReadOffset : 0;
+            int readSize = (writeNr == lastReadNr ? lastReadSize : chunk.length) - readOffset;
+            if (readOffset + readSize > chunk.length) {
                 throw new GridFsException(String.format("file[id=%s] not ready.", id));
             }
 
-            byte[] chunk = fileChunk.get("data", Binary.class).getData();
-            if (writeNr == firstReadNr) {
-                System.arraycopy(chunk, firstReadOffset, fileContent, writeBytes, firstReadSize);
-                writeNr++;
-                writeBytes = writeBytes + firstReadSize;
-                continue;
-            }
-
-            if (writeNr == lastReadNr) {
-                System.arraycopy(chunk, 0, fileContent, writeBytes, lastReadSize);
-                writeNr++;
-                writeBytes = writeBytes + lastReadSize;
-                continue;
-            }
-
-            System.arraycopy(chunk, 0, fileContent, writeBytes, chunk.length);
+            System.arraycopy(chunk, readOffset, fileContent, writeBytes, readSize);
             writeNr++;
-            writeBytes = writeBytes + chunk.length;
+            writeBytes = writeBytes + readSize;
         }
 
         if (writeBytes != size) {
@@ -1,8 +1,5 @@
 package gridfs.client;
 
-import com.mongodb.client.MongoCollection;
-import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
 import java.io.OutputStream;
@@ -11,12 +8,12 @@ import java.io.OutputStream;
  * @author siuming
  */
 final class GridFileRRead0 {
-    private final MongoCollection<Document> filesCollection;
-    private final MongoCollection<Document> chunkCollection;
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
 
-    GridFileRRead0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
-        this.filesCollection = filesCollection;
-        this.chunkCollection = chunkCollection;
+    GridFileRRead0(GridFileGet get, GridFileChunks chunks) {
+        this.get = get;
+        this.chunks = chunks;
     }
 
     void exec(ObjectId id, long offset, long size, OutputStream out) {
@@ -25,63 +22,45 @@ final class GridFileRRead0 {
             return;
         }
 
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
+        GridFile gridFile = get.exec(id);
         if (null == gridFile) {
             throw new GridFsException(String.format("file[id=%s] not found.", id));
         }
 
-        long fileSize = gridFile.get("length", Number.class).longValue();
-        if (fileSize < offset + size) {
+        long fileSize = gridFile.size();
+        if (offset < 0 || size < 0 || fileSize < offset + size) {
             throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
         }
 
-        int chunkSize = gridFile.get("chunkSize", Number.class).intValue();
+        int chunkSize = (int) gridFile.chunkSize();
         int firstReadNr = (int) (offset / chunkSize);
         int firstReadOffset = (int) (offset % chunkSize);
-        int firstReadSize = (int) (size > chunkSize ? chunkSize - firstReadOffset : size - firstReadOffset);
-        int lastReadNr = (int) ((offset + size) / chunkSize);
-        int lastReadSize = (int) ((offset + size) % chunkSize);
+        int lastReadNr = (int) ((offset + size - 1) / chunkSize);
+        int lastReadSize = (int) ((offset + size - 1) % chunkSize) + 1;
 
         long writeBytes = 0;
         int writeNr = firstReadNr;
-        int batchSize = lastReadNr - firstReadNr + 1;
-
-        Document filter = new Document("files_id", id).append("n", new Document("$gte", firstReadNr).append("$lte", lastReadNr));
-        for (Document fileChunk : chunkCollection.find(filter).sort(new Document("n", 1)).batchSize(batchSize)) {
-            int n = fileChunk.getInteger("n");
-            if (n != writeNr) {
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            int readOffset = writeNr == firstReadNr ? firstReadOffset : 0;
+            int readSize = (writeNr == lastReadNr ? lastReadSize : chunk.length) - readOffset;
+            if (readOffset + readSize > chunk.length) {
                 throw new GridFsException(String.format("file[id=%s] not ready.", id));
             }
 
-            byte[] chunk = fileChunk.get("data", Binary.class).getData();
             try {
-
-                if (writeNr == firstReadNr) {
-                    out.write(chunk, firstReadOffset, firstReadSize);
-                    out.flush();
-
-                    writeNr++;
-                    writeBytes = writeBytes + firstReadSize;
-                    continue;
-                }
-
-                if (writeNr == lastReadNr) {
-                    out.write(chunk, 0, lastReadSize);
-                    out.flush();
-
-                    writeNr++;
-                    writeBytes = writeBytes + lastReadSize;
-                    continue;
-                }
-
-                out.write(chunk);
-                out.flush();
-
-                writeNr++;
-                writeBytes = writeBytes + chunk.length;
+                out.write(chunk, readOffset, readSize);
             } catch (Exception e) {
                 throw new GridFsException(e);
             }
+
+            writeNr++;
+            writeBytes = writeBytes + readSize;
+        }
+
+        try {
+            out.flush();
+        } catch (Exception e) {
+            throw new GridFsException(e);
         }
 
         if (writeBytes != size) {
@@ -0,0 +1,62 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * @author siuming
+ */
+final class GridFileRRead1 {
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final int batchBytes;
+
+    GridFileRRead1(GridFileGet get, GridFileChunks chunks, int batchBytes) {
+        this.get = get;
+        this.chunks = chunks;
+        this.batchBytes = batchBytes;
+    }
+
+    void exec(ObjectId id, long offset, long size, WritableByteChannel out) {
+        if (size == 0) {
+            return;
+        }
+
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+
+        long fileSize = gridFile.size();
+        if (offset < 0 || size < 0 || fileSize < offset + size) {
+            throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
+        }
+
+        int chunkSize = (int) gridFile.chunkSize();
+        int firstReadNr = (int) (offset / chunkSize);
+        int firstReadOffset = (int) (offset % chunkSize);
+        int lastReadNr = (int) ((offset + size - 1) / chunkSize);
+        int lastReadSize = (int) ((offset + size - 1) % chunkSize) + 1;
+
+        GridFileChannelWriter writer = new GridFileChannelWriter(out, batchBytes);
+        long writeBytes = 0;
+        int writeNr = firstReadNr;
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            int readOffset = writeNr == firstReadNr ? firstReadOffset : 0;
+            int readSize = (writeNr == lastReadNr ? lastReadSize : chunk.length) - readOffset;
+            if (readOffset + readSize > chunk.length) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", id));
+            }
+
+            writer.write(chunk, readOffset, readSize);
+            writeNr++;
+            writeBytes = writeBytes + readSize;
+        }
+        writer.flush();
+
+        if (writeBytes != size) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", id));
+        }
+    }
+}
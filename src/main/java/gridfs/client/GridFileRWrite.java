@@ -2,22 +2,41 @@ package gridfs.client;
 
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.model.Filters;
-import com.mongodb.client.model.UpdateOptions;
 import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executor;
+
 /**
  * @author siuming
  */
 final class GridFileRWrite {
 
-    private final MongoCollection<Document> filesCollection;
+    private final GridFileGet get;
     private final MongoCollection<Document> chunkCollection;
+    private final GridFileChunkRefs refs;
+    private final GridFileInline inline;
+    private final int batchBytes;
+    private final int patchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
 
-    GridFileRWrite(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
-        this.filesCollection = filesCollection;
+    GridFileRWrite(GridFileGet get, MongoCollection<Document> chunkCollection, GridFileChunkRefs refs, GridFileInline inline, int batchBytes, int patchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.get = get;
         this.chunkCollection = chunkCollection;
+        this.refs = refs;
+        this.inline = inline;
+        this.batchBytes = batchBytes;
+        this.patchBytes = patchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
     }
 
     void exec(ObjectId id, long offset, byte[] data) {
@@ -25,76 +44,91 @@ final class GridFileRWrite {
             return;
         }
 
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
+        GridFile gridFile = get.exec(id);
         if (null == gridFile) {
             throw new GridFsException(String.format("file[id=%s] not found.", id));
         }
+        if (null != gridFile.blocks()) {
+            throw new GridFsException(String.format("file[id=%s] is deduplicated, modify not supported.", id));
+        }
+        if (null != gridFile.inline()) {
+            inline.modify(gridFile, offset, data);
+            return;
+        }
+        if (!id.equals(gridFile.chunksId()) || refs.isShared(id)) {
+            throw new GridFsException(String.format("file[id=%s] shares its chunks, modify not supported.", id));
+        }
 
-        long fileSize = gridFile.get("length", Number.class).longValue();
-        if (fileSize < offset + data.length) {
+        long fileSize = gridFile.size();
+        if (offset < 0 || fileSize < offset + data.length) {
             throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
         }
-        int chunkSize = gridFile.get("chunkSize", Number.class).intValue();
-        int lastChunkSize = (int) fileSize % chunkSize;
-
-        int fileChunkNr = (int) (fileSize % chunkSize == 0 ? fileSize / chunkSize : (fileSize / chunkSize) + 1);
-        int lastChunkNr = fileChunkNr - 1;
 
+        int chunkSize = (int) gridFile.chunkSize();
         int firstWriteNr = (int) (offset / chunkSize);
-        int firstWriteSize = (int) ((offset + data.length) >= chunkSize ? chunkSize - (offset % chunkSize) : data.length);
-        int firstWriteOffset = (int) (offset % chunkSize);
-        if (firstWriteNr == lastChunkNr) {
-            writeLastChunk(id, firstWriteNr, firstWriteOffset, firstWriteSize, data, 0, lastChunkSize);
-            return;
-        }
+        int lastWriteNr = (int) ((offset + data.length - 1) / chunkSize);
 
-        writePartialChunk(id, firstWriteNr, firstWriteOffset, firstWriteSize, data, 0, chunkSize);
-        int lastWriteNr = (int) ((offset + data.length) / chunkSize);
-        if (firstWriteNr == lastWriteNr) {
-            return;
+        // only the edge chunks keep bytes outside the written range, small edits are patched and the others are fetched in one round trip.
+        List<Integer> patchNrs = new ArrayList<>();
+        List<Integer> partialNrs = new ArrayList<>();
+        for (int nr : firstWriteNr == lastWriteNr ? new int[]{firstWriteNr} : new int[]{firstWriteNr, lastWriteNr}) {
+            if (!isPartial(nr, chunkSize, fileSize, offset, data.length)) {
+                continue;
+            }
+            long chunkOffset = (long) nr * chunkSize;
+            long writeSize = Math.min(offset + data.length, chunkOffset + chunkSize) - Math.max(offset, chunkOffset);
+            if (writeSize <= patchBytes) {
+                patchNrs.add(nr);
+            } else {
+                partialNrs.add(nr);
+            }
         }
+        Map<Integer, byte[]> partialChunks = readChunks(gridFile, partialNrs);
 
-        int lastWriteSize = (int) ((offset + data.length) % chunkSize);
-        if (lastWriteNr == lastChunkNr) {
-            writeLastChunk(id, lastWriteNr, 0, lastWriteSize, data, firstWriteSize + ((lastWriteNr - 1) * chunkSize), lastChunkSize);
-        } else {
-            writePartialChunk(id, lastWriteNr, 0, lastWriteSize, data, firstWriteSize + ((lastWriteNr - 1) * chunkSize), chunkSize);
-        }
+        GridFileChunkWriter writer = new GridFileChunkWriter(chunkCollection, gridFile, batchBytes, executor, writeWindow, buffers);
+        try {
+            for (int nr = firstWriteNr; nr <= lastWriteNr; nr++) {
+                long chunkOffset = (long) nr * chunkSize;
+                int chunkLength = (int) Math.min(chunkSize, fileSize - chunkOffset);
+                long writeStart = Math.max(offset, chunkOffset);
+                long writeEnd = Math.min(offset + data.length, chunkOffset + chunkLength);
+                if (patchNrs.contains(nr) && writer.patch(nr, (int) (writeStart - chunkOffset), Arrays.copyOfRange(data, (int) (writeStart - offset), (int) (writeEnd - offset)))) {
+                    continue;
+                }
 
-        for (int i = firstWriteNr + 1; i < lastWriteNr; i++) {
-            writeChunk(id, i, data, firstWriteSize + ((i - 1) * chunkSize), chunkSize);
+                byte[] chunk = buffers.acquire(chunkLength);
+                if (writeStart > chunkOffset || writeEnd < chunkOffset + chunkLength) {
+                    Arrays.fill(chunk, (byte) 0);
+                }
+                byte[] previous = partialChunks.get(nr);
+                if (null != previous) {
+                    System.arraycopy(previous, 0, chunk, 0, Math.min(previous.length, chunkLength));
+                }
+                System.arraycopy(data, (int) (writeStart - offset), chunk, (int) (writeStart - chunkOffset), (int) (writeEnd - writeStart));
+                writer.write(nr, chunk);
+            }
+            writer.flush();
+        } catch (RuntimeException e) {
+            writer.cancel();
+            throw e;
         }
     }
 
-    private void writeChunk(ObjectId id, int nr, byte[] data, int dataOffset, int chunkSize) {
-        byte[] buf = new byte[chunkSize];
-        System.arraycopy(data, dataOffset, buf, 0, chunkSize);
-        chunkCollection.updateOne(
-                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(buf))),
-                new UpdateOptions().upsert(true)
-        );
-    }
+    private Map<Integer, byte[]> readChunks(GridFile gridFile, List<Integer> nrs) {
+        Map<Integer, byte[]> chunks = new HashMap<>();
+        if (nrs.isEmpty()) {
+            return chunks;
+        }
 
-    private void writePartialChunk(ObjectId id, int nr, int writeOffset, int writeSize, byte[] data, int dataOffset, int chunkSize) {
-        Document chunk = chunkCollection.find(new Document("files_id", id).append("n", nr)).first();
-        byte[] chunkData = null != chunk ? chunk.get("data", Binary.class).getData() : new byte[chunkSize];
-        System.arraycopy(data, dataOffset, chunkData, writeOffset, writeSize);
-        chunkCollection.updateOne(
-                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(chunkData))),
-                new UpdateOptions().upsert(true)
-        );
+        for (GridFileChunk fileChunk : chunkCollection.find(Filters.and(Filters.eq("files_id", gridFile.id()), Filters.in("n", nrs)), GridFileChunk.class)) {
+            chunks.put(fileChunk.n, GridFileChunks.data(fileChunk, gridFile));
+        }
+        return chunks;
     }
 
-    private void writeLastChunk(ObjectId id, int nr, int writeOffset, int writeSize, byte[] data, int dataOffset, int chunkSize) {
-        Document chunk = chunkCollection.find(new Document("files_id", id).append("n", nr)).first();
-        byte[] chunkData = null != chunk ? chunk.get("data", Binary.class).getData() : new byte[chunkSize];
-        System.arraycopy(data, dataOffset, chunkData, writeOffset, writeSize);
-        chunkCollection.updateOne(
-                Filters.and(Filters.eq("files_id", id), Filters.eq("n", nr)),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(chunkData))),
-                new UpdateOptions().upsert(true)
-        );
+    private static boolean isPartial(int nr, int chunkSize, long fileSize, long offset, int length) {
+        long chunkOffset = (long) nr * chunkSize;
+        long chunkEnd = Math.min(chunkOffset + chunkSize, fileSize);
+        return offset > chunkOffset || offset + length < chunkEnd;
     }
 }
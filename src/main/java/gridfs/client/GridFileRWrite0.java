@@ -1,133 +1,135 @@
 package gridfs.client;
 
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.UpdateOptions;
 import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
 
 /**
  * @author siuming
  */
 final class GridFileRWrite0 {
 
-    private final MongoCollection<Document> filesCollection;
+    private final GridFileGet get;
     private final MongoCollection<Document> chunkCollection;
-
-    GridFileRWrite0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
-        this.filesCollection = filesCollection;
+    private final GridFileChunkRefs refs;
+    private final GridFileInline inline;
+    private final int batchBytes;
+    private final int patchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
+
+    GridFileRWrite0(GridFileGet get, MongoCollection<Document> chunkCollection, GridFileChunkRefs refs, GridFileInline inline, int batchBytes, int patchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.get = get;
         this.chunkCollection = chunkCollection;
+        this.refs = refs;
+        this.inline = inline;
+        this.batchBytes = batchBytes;
+        this.patchBytes = patchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
     }
 
     void exec(ObjectId id, long offset, InputStream data) {
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
+        GridFile gridFile = get.exec(id);
         if (null == gridFile) {
             throw new GridFsException(String.format("file[id=%s] not found.", id));
         }
+        if (null != gridFile.blocks()) {
+            throw new GridFsException(String.format("file[id=%s] is deduplicated, modify not supported.", id));
+        }
+        if (null != gridFile.inline()) {
+            inline.modify0(gridFile, offset, data);
+            return;
+        }
+        if (!id.equals(gridFile.chunksId()) || refs.isShared(id)) {
+            throw new GridFsException(String.format("file[id=%s] shares its chunks, modify not supported.", id));
+        }
 
-        long fileSize = gridFile.get("length", Number.class).longValue();
-        int chunkSize = gridFile.get("chunkSize", Number.class).intValue();
-        int lastChunkSize = (int) fileSize % chunkSize;
-
-        int fileChunkNr = (int) (fileSize % chunkSize == 0 ? fileSize / chunkSize : (fileSize / chunkSize) + 1);
-        int lastChunkNr = fileChunkNr - 1;
-
-        int firstWriteNr = (int) (offset / chunkSize);
-        int firstWriteOffset = (int) (offset % chunkSize);
+        long fileSize = gridFile.size();
+        if (offset < 0 || fileSize < offset) {
+            throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
+        }
 
-        int writeNr = firstWriteNr;
-        long writeBytes = 0;
-        for (; ; ) {
+        int chunkSize = (int) gridFile.chunkSize();
+        int writeNr = (int) (offset / chunkSize);
+        int writeOffset = (int) (offset % chunkSize);
 
-            ChunkRead write;
-            if (writeNr == firstWriteNr) {
-                write = readChunk(data, chunkSize - firstWriteOffset);
-            } else if (writeNr == lastChunkNr) {
-                write = readChunk(data, lastChunkSize);
-            } else {
-                write = readChunk(data, chunkSize);
-            }
+        GridFileChunkWriter writer = new GridFileChunkWriter(chunkCollection, gridFile, batchBytes, executor, writeWindow, buffers);
+        try {
+            for (long chunkOffset = (long) writeNr * chunkSize; chunkOffset < fileSize; chunkOffset = chunkOffset + chunkSize) {
+                int chunkLength = (int) Math.min(chunkSize, fileSize - chunkOffset);
+                byte[] chunk = buffers.acquire(chunkLength);
+                int writeSize = readChunk(data, chunk, writeOffset, chunkLength - writeOffset);
+                boolean ended = writeOffset + writeSize < chunkLength;
+                boolean written = false;
+                if (writeSize > 0) {
+                    // the stream is only known to end inside a chunk once it is read, so edge chunks are fetched one by one.
+                    boolean partial = writeOffset > 0 || ended;
+                    if (!partial || writeSize > patchBytes || !writer.patch(writeNr, writeOffset, Arrays.copyOfRange(chunk, writeOffset, writeOffset + writeSize))) {
+                        if (partial) {
+                            Arrays.fill(chunk, 0, writeOffset, (byte) 0);
+                            Arrays.fill(chunk, writeOffset + writeSize, chunkLength, (byte) 0);
+                            mergeChunk(gridFile, writeNr, chunk, writeOffset, writeSize);
+                        }
+                        writer.write(writeNr, chunk);
+                        written = true;
+                    }
+                }
+                if (!written) {
+                    buffers.release(chunk);
+                }
+                if (ended) {
+                    writer.flush();
+                    return;
+                }
 
-            if (write.readSize == -1) {
-                break;
+                writeNr++;
+                writeOffset = 0;
             }
 
-            byte[] readBytes = write.readBytes;
-            int readSize = write.readSize;
-
-            writeBytes = writeBytes + readSize;
-            if (writeBytes + offset > fileSize) {
+            if (data.read() != -1) {
                 throw new GridFsException(String.format("file[id=%s] offset out of range, size=%s", id, fileSize));
             }
+            writer.flush();
+        } catch (IOException e) {
+            writer.cancel();
+            throw new GridFsException(e);
+        } catch (RuntimeException e) {
+            writer.cancel();
+            throw e;
+        }
+    }
 
-            int writeOffset = writeNr == firstWriteNr ? firstWriteOffset : 0;
-            if (writeNr == lastChunkNr) {
-                writeLastChunk(id, writeNr, writeOffset, readSize, readBytes, lastChunkSize);
+    private int readChunk(InputStream data, byte[] chunk, int offset, int length) throws IOException {
+        int readBytes = 0;
+        while (readBytes < length) {
+            int readSize = data.read(chunk, offset + readBytes, length - readBytes);
+            if (readSize == -1) {
                 break;
             }
-
-            if (writeNr == firstWriteNr) {
-                writePartialChunk(id, writeNr, writeOffset, readSize, readBytes, chunkSize);
-                writeNr++;
-                continue;
-            }
-
-            writeChunk(id, writeNr, readSize, readBytes, chunkSize);
-            writeNr++;
+            readBytes = readBytes + readSize;
         }
+        return readBytes;
     }
 
-    private ChunkRead readChunk(InputStream data, int chunkSize) {
-        try {
-            byte[] writeBytes = new byte[chunkSize];
-            int writeSize = data.read(writeBytes);
-            return new ChunkRead(writeBytes, writeSize);
-        } catch (Exception e) {
-            throw new GridFsException(e);
+    private void mergeChunk(GridFile gridFile, int nr, byte[] chunk, int writeOffset, int writeSize) {
+        GridFileChunk fileChunk = chunkCollection.find(new Document("files_id", gridFile.id()).append("n", nr), GridFileChunk.class).first();
+        if (null == fileChunk) {
+            return;
         }
-    }
-
-    private void writeChunk(ObjectId id, int nr, int writeSize, byte[] data, int chunkSize) {
-        byte[] buf = new byte[chunkSize];
-        System.arraycopy(data, 0, buf, 0, writeSize);
-        chunkCollection.updateOne(
-                new Document("files_id", id).append("n", nr),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(buf))),
-                new UpdateOptions().upsert(true)
-        );
-    }
-
-    private void writePartialChunk(ObjectId id, int nr, int writeOffset, int writeSize, byte[] data, int chunkSize) {
-        Document chunk = chunkCollection.find(new Document("files_id", id).append("n", nr)).first();
-        byte[] chunkData = null != chunk ? chunk.get("data", Binary.class).getData() : new byte[chunkSize];
-        System.arraycopy(data, 0, chunkData, writeOffset, writeSize);
-        chunkCollection.updateOne(
-                new Document("files_id", id).append("n", nr),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(chunkData))),
-                new UpdateOptions().upsert(true)
-        );
-    }
-
-    private void writeLastChunk(ObjectId id, int nr, int writeOffset, int writeSize, byte[] data, int chunkBytes) {
-        Document chunk = chunkCollection.find(new Document("files_id", id).append("n", nr)).first();
-        byte[] chunkData = null != chunk ? chunk.get("data", Binary.class).getData() : new byte[chunkBytes];
-        System.arraycopy(data, 0, chunkData, writeOffset, writeSize);
-        chunkCollection.updateOne(
-                new Document("files_id", id).append("n", nr),
-                new Document("$set", new Document("files_id", id).append("n", nr).append("data", new Binary(chunkData))),
-                new UpdateOptions().upsert(true)
-        );
-    }
-
-    private static class ChunkRead {
-        final byte[] readBytes;
-        final int readSize;
 
-        private ChunkRead(byte[] readBytes, int readSize) {
-            this.readBytes = readBytes;
-            this.readSize = readSize;
+        byte[] previous = GridFileChunks.data(fileChunk, gridFile);
+        System.arraycopy(previous, 0, chunk, 0, Math.min(previous.length, writeOffset));
+        int writeEnd = writeOffset + writeSize;
+        if (previous.length > writeEnd) {
+            System.arraycopy(previous, writeEnd, chunk, writeEnd, Math.min(previous.length, chunk.length) - writeEnd);
         }
     }
 }
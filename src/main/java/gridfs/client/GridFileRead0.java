@@ -1,8 +1,5 @@
 package gridfs.client;
 
-import com.mongodb.client.MongoCollection;
-import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
 import java.io.OutputStream;
@@ -12,41 +9,35 @@ import java.io.OutputStream;
  */
 final class GridFileRead0 {
 
-    private final MongoCollection<Document> filesCollection;
-    private final MongoCollection<Document> chunkCollection;
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
 
-    GridFileRead0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection) {
-        this.filesCollection = filesCollection;
-        this.chunkCollection = chunkCollection;
+    GridFileRead0(GridFileGet get, GridFileChunks chunks) {
+        this.get = get;
+        this.chunks = chunks;
     }
 
     void exec(ObjectId id, OutputStream out) {
-        Document gridFile = filesCollection.find(new Document("_id", id)).first();
+        GridFile gridFile = get.exec(id);
         if (null == gridFile) {
             throw new GridFsException(String.format("file[id=%s] not found.", id));
         }
 
-        long fileSize = gridFile.get("length", Number.class).longValue();
-        int chunkSize = gridFile.get("chunkSize", Number.class).intValue();
-        int batchSize = fileSize % chunkSize == 0 ? (int) fileSize / chunkSize : (int) ((fileSize / chunkSize) + 1);
+        long fileSize = gridFile.size();
+        int chunkSize = (int) gridFile.chunkSize();
+        int chunkNr = fileSize % chunkSize == 0 ? (int) (fileSize / chunkSize) : (int) ((fileSize / chunkSize) + 1);
 
-        int writeNr = 0;
         long writeBytes = 0;
-        for (Document fileChunk : chunkCollection.find(new Document("files_id", id)).sort(new Document("n", 1)).batchSize(batchSize)) {
-            int n = fileChunk.getInteger("n");
-            if (n != writeNr) {
-                throw new GridFsException(String.format("file[id=%s] not ready.", id));
-            }
-
-            byte[] chunk = fileChunk.get("data", Binary.class).getData();
-            try {
+        try {
+            for (byte[] chunk : chunks.read(gridFile, 0, chunkNr - 1)) {
                 out.write(chunk);
-                out.flush();
-            } catch (Exception e) {
-                throw new GridFsException(e);
+                writeBytes = writeBytes + chunk.length;
             }
-            writeNr++;
-            writeBytes = writeBytes + chunk.length;
+            out.flush();
+        } catch (GridFsException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GridFsException(e);
         }
 
         if (writeBytes != fileSize) {
@@ -0,0 +1,44 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * @author siuming
+ */
+final class GridFileRead1 {
+
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final int batchBytes;
+
+    GridFileRead1(GridFileGet get, GridFileChunks chunks, int batchBytes) {
+        this.get = get;
+        this.chunks = chunks;
+        this.batchBytes = batchBytes;
+    }
+
+    void exec(ObjectId id, WritableByteChannel out) {
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+
+        long fileSize = gridFile.size();
+        int chunkSize = (int) gridFile.chunkSize();
+        int chunkNr = fileSize % chunkSize == 0 ? (int) (fileSize / chunkSize) : (int) ((fileSize / chunkSize) + 1);
+
+        GridFileChannelWriter writer = new GridFileChannelWriter(out, batchBytes);
+        long writeBytes = 0;
+        for (byte[] chunk : chunks.read(gridFile, 0, chunkNr - 1)) {
+            writer.write(chunk, 0, chunk.length);
+            writeBytes = writeBytes + chunk.length;
+        }
+        writer.flush();
+
+        if (writeBytes != fileSize) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", id));
+        }
+    }
+}
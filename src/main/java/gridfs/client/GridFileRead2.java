@@ -0,0 +1,85 @@
+package gridfs.client;
+
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFileRead2 {
+    private final GridFileGet get;
+    private final GridFileChunks chunks;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+
+    GridFileRead2(GridFileGet get, GridFileChunks chunks, int batchBytes, Executor executor, int writeWindow) {
+        this.get = get;
+        this.chunks = chunks;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+    }
+
+    void exec(ObjectId id, Path out) {
+        GridFile gridFile = get.exec(id);
+        if (null == gridFile) {
+            throw new GridFsException(String.format("file[id=%s] not found.", id));
+        }
+
+        long fileSize = gridFile.size();
+        int chunkSize = (int) gridFile.chunkSize();
+        int chunkNr = fileSize % chunkSize == 0 ? (int) (fileSize / chunkSize) : (int) ((fileSize / chunkSize) + 1);
+        int batchNr = Math.max(1, batchBytes / chunkSize);
+
+        long writeBytes = 0;
+        GridFileWindow<Long> window = new GridFileWindow<>(executor, writeWindow);
+        try (RandomAccessFile file = new RandomAccessFile(out.toFile(), "rw")) {
+            file.setLength(fileSize);
+            FileChannel channel = file.getChannel();
+            for (int firstReadNr = 0; firstReadNr < chunkNr; firstReadNr = firstReadNr + batchNr) {
+                int readNr = firstReadNr;
+                int lastReadNr = Math.min(firstReadNr + batchNr, chunkNr) - 1;
+                long position = (long) firstReadNr * chunkSize;
+                long length = Math.min(fileSize, (long) (lastReadNr + 1) * chunkSize) - position;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, position, length);
+
+                while (window.isFull()) {
+                    writeBytes = writeBytes + window.take();
+                }
+                window.submit(() -> readChunks(gridFile, readNr, lastReadNr, region));
+            }
+            while (!window.isEmpty()) {
+                writeBytes = writeBytes + window.take();
+            }
+        } catch (IOException e) {
+            window.cancel();
+            throw new GridFsException(e);
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
+
+        if (writeBytes != fileSize) {
+            throw new GridFsException(String.format("file[id=%s] not ready.", id));
+        }
+    }
+
+    private long readChunks(GridFile gridFile, int firstReadNr, int lastReadNr, MappedByteBuffer region) {
+        long writeBytes = 0;
+        for (byte[] chunk : chunks.read(gridFile, firstReadNr, lastReadNr)) {
+            if (chunk.length > region.remaining()) {
+                throw new GridFsException(String.format("file[id=%s] not ready.", gridFile.id()));
+            }
+            region.put(chunk);
+            writeBytes = writeBytes + chunk.length;
+        }
+        return writeBytes;
+    }
+}
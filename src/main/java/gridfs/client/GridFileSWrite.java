@@ -0,0 +1,40 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFileSWrite {
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
+
+    GridFileSWrite(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
+    }
+
+    GridFsUpload exec(ObjectId id, String name, Document metadata) {
+        return exec(id, name, metadata, writeWindow);
+    }
+
+    GridFsUpload exec(ObjectId id, String name, Document metadata, int window) {
+        return new GridFsUpload(id, name, metadata, filesCollection, chunkCollection, chunkSize, codec, batchBytes, executor, window, buffers);
+    }
+}
@@ -0,0 +1,107 @@
+package gridfs.client;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * bounded window of tasks running on an executor, results are taken in submit order.
+ * a task not yet started by the executor is run by the taking thread, so a window never waits on a busy pool.
+ *
+ * @author siuming
+ */
+final class GridFileWindow<T> {
+    private final Executor executor;
+    private final int size;
+    private final Deque<Task<T>> tasks = new ArrayDeque<>();
+
+    /**
+     * @param executor
+     * @param size     max tasks in flight, tasks are run by the taking thread when it is 0.
+     */
+    GridFileWindow(Executor executor, int size) {
+        this.executor = executor;
+        this.size = size;
+    }
+
+    boolean isFull() {
+        return tasks.size() >= Math.max(size, 1);
+    }
+
+    boolean isEmpty() {
+        return tasks.isEmpty();
+    }
+
+    void submit(Callable<T> callable) {
+        Task<T> task = new Task<>(callable);
+        tasks.add(task);
+        if (size > 0) {
+            executor.execute(task);
+        }
+    }
+
+    T take() {
+        Task<T> task = tasks.poll();
+        if (null == task) {
+            throw new GridFsException("window is empty.");
+        }
+
+        task.run();
+        try {
+            return task.result.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GridFsException(e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof GridFsException) {
+                throw (GridFsException) e.getCause();
+            }
+            throw new GridFsException(e.getCause());
+        }
+    }
+
+    /**
+     * drop tasks not yet started and wait for running ones, failures are ignored.
+     */
+    void cancel() {
+        for (Task<T> task = tasks.poll(); null != task; task = tasks.poll()) {
+            if (task.claimed.compareAndSet(false, true)) {
+                continue;
+            }
+            try {
+                task.result.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                // ignored, the window is being discarded.
+            }
+        }
+    }
+
+    private static class Task<T> implements Runnable {
+        final Callable<T> callable;
+        final AtomicBoolean claimed = new AtomicBoolean();
+        final CompletableFuture<T> result = new CompletableFuture<>();
+
+        private Task(Callable<T> callable) {
+            this.callable = callable;
+        }
+
+        @Override
+        public void run() {
+            if (!claimed.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                result.complete(callable.call());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+}
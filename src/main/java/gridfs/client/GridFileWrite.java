@@ -1,11 +1,17 @@
 package gridfs.client;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonBinary;
 import org.bson.BsonDateTime;
 import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
 /**
  * @author siuming
  */
@@ -14,11 +20,21 @@ final class GridFileWrite {
     private final MongoCollection<Document> filesCollection;
     private final MongoCollection<Document> chunkCollection;
     private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
 
-    GridFileWrite(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize) {
+    GridFileWrite(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
         this.filesCollection = filesCollection;
         this.chunkCollection = chunkCollection;
         this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
     }
 
     void exec(ObjectId id, String name, String md5, long size, Document metadata, byte[] data) {
@@ -26,7 +42,12 @@ final class GridFileWrite {
             throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, data.length));
         }
 
-        writeChunks(id, data);
+        try {
+            writeChunks(id, data);
+        } catch (RuntimeException e) {
+            chunkCollection.deleteMany(Filters.eq("files_id", id));
+            throw e;
+        }
         writeFile(id, name, md5, size, metadata);
     }
 
@@ -37,6 +58,9 @@ final class GridFileWrite {
                 .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
                 .append("md5", md5)
                 .append("filename", name);
+        if (null != codec.codecName()) {
+            fileDocument.append("codec", codec.codecName());
+        }
         if (null != metadata && !metadata.isEmpty()) {
             fileDocument.append("metadata", metadata);
         }
@@ -48,21 +72,56 @@ final class GridFileWrite {
             return;
         }
 
-        int chunkNr = (data.length % chunkSize == 0) ? data.length / chunkSize : (data.length / chunkSize) + 1;
-        for (int i = 0; i < chunkNr - 1; i++) {
-            byte[] chunk = new byte[chunkSize];
-            System.arraycopy(data, i * chunkSize, chunk, 0, chunkSize);
-            writeChunk(id, i, chunk);
-        }
+        GridFileWindow<Void> window = new GridFileWindow<>(executor, writeWindow);
+        List<Document> batch = new ArrayList<>();
+        List<byte[]> batchBuffers = new ArrayList<>();
+        int batchedBytes = 0;
 
-        int offset = (chunkNr - 1) * chunkSize;
-        int remain = data.length - offset;
-        byte[] lastChunk = new byte[remain];
-        System.arraycopy(data, offset, lastChunk, 0, remain);
-        writeChunk(id, chunkNr - 1, lastChunk);
+        try {
+            int chunkNr = (data.length % chunkSize == 0) ? data.length / chunkSize : (data.length / chunkSize) + 1;
+            for (int i = 0; i < chunkNr; i++) {
+                int offset = i * chunkSize;
+                int length = Math.min(chunkSize, data.length - offset);
+                if (!batch.isEmpty() && batchedBytes + length > batchBytes) {
+                    writeBatch(window, batch, batchBuffers);
+                    batch = new ArrayList<>();
+                    batchBuffers = new ArrayList<>();
+                    batchedBytes = 0;
+                }
+
+                byte[] chunk = buffers.acquire(length);
+                System.arraycopy(data, offset, chunk, 0, length);
+                byte[] encoded = codec.encode(chunk);
+                if (encoded == chunk) {
+                    batchBuffers.add(chunk);
+                } else {
+                    buffers.release(chunk);
+                }
+                batch.add(new Document("files_id", id).append("n", i).append("data", new BsonBinary(encoded)));
+                batchedBytes = batchedBytes + length;
+            }
+            writeBatch(window, batch, batchBuffers);
+
+            while (!window.isEmpty()) {
+                window.take();
+            }
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
     }
 
-    private void writeChunk(ObjectId id, int n, byte[] chunk) {
-        chunkCollection.insertOne(new Document("files_id", id).append("n", n).append("data", new Binary(chunk)));
+    private void writeBatch(GridFileWindow<Void> window, List<Document> batch, List<byte[]> batchBuffers) {
+        while (window.isFull()) {
+            window.take();
+        }
+        window.submit(() -> {
+            try {
+                chunkCollection.insertMany(batch, new InsertManyOptions().ordered(false));
+            } finally {
+                buffers.release(batchBuffers);
+            }
+            return null;
+        });
     }
 }
@@ -1,12 +1,18 @@
 package gridfs.client;
 
 import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonBinary;
 import org.bson.BsonDateTime;
 import org.bson.Document;
-import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 
+import java.io.IOException;
 import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
 
 /**
  * @author siuming
@@ -15,34 +21,62 @@ final class GridFileWrite0 {
     private final MongoCollection<Document> filesCollection;
     private final MongoCollection<Document> chunkCollection;
     private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
 
-    GridFileWrite0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize) {
+    GridFileWrite0(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
         this.filesCollection = filesCollection;
         this.chunkCollection = chunkCollection;
         this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
     }
 
-
-    void exec(ObjectId id, String name, String md5, long size, Document metadata, InputStream data) {
-        writeChunks(id, size, data);
-        writeFile(id, name, md5, size, metadata);
+    /**
+     * @param md5    expected md5, the computed one is stored when null or empty.
+     * @param sha256 expected sha-256, checked when not null or empty.
+     */
+    void exec(ObjectId id, String name, String md5, String sha256, long size, Document metadata, InputStream data) {
+        GridFileDigest digest = new GridFileDigest(executor, batchBytes);
+        try {
+            writeChunks(id, size, data, digest);
+            digest.finish();
+            digest.check(md5, sha256);
+        } catch (RuntimeException e) {
+            chunkCollection.deleteMany(Filters.eq("files_id", id));
+            throw e;
+        }
+        writeFile(id, name, digest.md5(), digest.sha256(), size, metadata);
     }
 
-    private void writeChunks(ObjectId id, long size, InputStream data) {
+    private void writeChunks(ObjectId id, long size, InputStream data, GridFileDigest digest) {
         long writeBytes = 0;
 
+        GridFileWindow<Void> window = new GridFileWindow<>(executor, writeWindow);
+        List<Document> batch = new ArrayList<>();
+        List<byte[]> batchBuffers = new ArrayList<>();
+        int batchedBytes = 0;
+
         int chunkNr = 0;
         int readBytes;
-        byte[] buf = new byte[chunkSize];
-        for (; ; ) {
-            try {
-                readBytes = data.read(buf);
-                if (readBytes == -1) {
+        try {
+            for (; ; ) {
+                byte[] buf = buffers.acquire(chunkSize);
+                readBytes = readChunk(data, buf);
+                if (readBytes == 0) {
+                    buffers.release(buf);
                     break;
                 }
 
                 writeBytes = writeBytes + readBytes;
                 if (writeBytes > size) {
+                    buffers.release(buf);
                     throw new GridFsException(String.format("file overflow[size=%s, data=%s].", size, writeBytes));
                 }
 
@@ -50,30 +84,79 @@ final class GridFileWrite0 {
                 if (readBytes != chunkSize) {
                     chunk = new byte[readBytes];
                     System.arraycopy(buf, 0, chunk, 0, readBytes);
+                    buffers.release(buf);
                 }
+                digest.update(chunk);
 
-                writeChunk(id, chunkNr, chunk);
+                if (!batch.isEmpty() && batchedBytes + readBytes > batchBytes) {
+                    writeBatch(window, batch, batchBuffers, digest);
+                    batch = new ArrayList<>();
+                    batchBuffers = new ArrayList<>();
+                    batchedBytes = 0;
+                }
+                batchBuffers.add(chunk);
+                batch.add(new Document("files_id", id).append("n", chunkNr).append("data", new BsonBinary(codec.encode(chunk))));
+                batchedBytes = batchedBytes + readBytes;
                 chunkNr++;
-            } catch (Exception e) {
-                throw new GridFsException(e);
             }
+
+            if (!batch.isEmpty()) {
+                writeBatch(window, batch, batchBuffers, digest);
+            }
+            while (!window.isEmpty()) {
+                window.take();
+            }
+        } catch (RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
+    }
+
+    private int readChunk(InputStream data, byte[] buf) {
+        int readBytes = 0;
+        try {
+            while (readBytes < buf.length) {
+                int read = data.read(buf, readBytes, buf.length - readBytes);
+                if (read == -1) {
+                    break;
+                }
+                readBytes = readBytes + read;
+            }
+        } catch (IOException e) {
+            throw new GridFsException(e);
         }
+        return readBytes;
     }
 
-    private void writeFile(ObjectId id, String name, String md5, long size, Document metadata) {
+    private void writeFile(ObjectId id, String name, String md5, String sha256, long size, Document metadata) {
         Document fileDocument = new Document("_id", id)
                 .append("length", size)
                 .append("chunkSize", chunkSize)
                 .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
                 .append("md5", md5)
+                .append("sha256", sha256)
                 .append("filename", name);
+        if (null != codec.codecName()) {
+            fileDocument.append("codec", codec.codecName());
+        }
         if (null != metadata && !metadata.isEmpty()) {
             fileDocument.append("metadata", metadata);
         }
         filesCollection.insertOne(fileDocument);
     }
 
-    private void writeChunk(ObjectId id, int n, byte[] chunk) {
-        chunkCollection.insertOne(new Document("files_id", id).append("n", n).append("data", new Binary(chunk)));
+    // a chunk buffer goes back to the pool once its batch is sent and the digest has passed it.
+    private void writeBatch(GridFileWindow<Void> window, List<Document> batch, List<byte[]> batchBuffers, GridFileDigest digest) {
+        while (window.isFull()) {
+            window.take();
+        }
+        window.submit(() -> {
+            try {
+                chunkCollection.insertMany(batch, new InsertManyOptions().ordered(false));
+            } finally {
+                digest.after(() -> buffers.release(batchBuffers));
+            }
+            return null;
+        });
     }
 }
@@ -0,0 +1,123 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * @author siuming
+ */
+final class GridFileWrite1 {
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+    private final Executor executor;
+    private final int writeWindow;
+    private final GridFileBuffers buffers;
+
+    GridFileWrite1(MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+        this.executor = executor;
+        this.writeWindow = writeWindow;
+        this.buffers = buffers;
+    }
+
+    /**
+     * @param channel read from position 0, regions past the end of a file that shrank fail to map.
+     * @param size    file size read once by the caller.
+     */
+    void exec(ObjectId id, String name, String md5, Document metadata, FileChannel channel, long size) {
+        try {
+            writeChunks(id, size, channel);
+        } catch (IOException e) {
+            chunkCollection.deleteMany(Filters.eq("files_id", id));
+            throw new GridFsException(e);
+        } catch (RuntimeException e) {
+            chunkCollection.deleteMany(Filters.eq("files_id", id));
+            throw e;
+        }
+        writeFile(id, name, md5, size, metadata);
+    }
+
+    private void writeChunks(ObjectId id, long size, FileChannel channel) throws IOException {
+        long chunkNr = size % chunkSize == 0 ? size / chunkSize : (size / chunkSize) + 1;
+        if (chunkNr > Integer.MAX_VALUE) {
+            throw new GridFsException(String.format("file overflow[size=%s].", size));
+        }
+
+        int batchNr = Math.max(1, batchBytes / chunkSize);
+        GridFileWindow<Void> window = new GridFileWindow<>(executor, writeWindow);
+        try {
+            for (int firstWriteNr = 0; firstWriteNr < chunkNr; firstWriteNr = firstWriteNr + batchNr) {
+                int writeNr = firstWriteNr;
+                int lastWriteNr = (int) Math.min(firstWriteNr + batchNr, chunkNr) - 1;
+                long position = (long) firstWriteNr * chunkSize;
+                long length = Math.min(size, (long) (lastWriteNr + 1) * chunkSize) - position;
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+
+                while (window.isFull()) {
+                    window.take();
+                }
+                window.submit(() -> {
+                    writeBatch(id, writeNr, region);
+                    return null;
+                });
+            }
+            while (!window.isEmpty()) {
+                window.take();
+            }
+        } catch (IOException | RuntimeException e) {
+            window.cancel();
+            throw e;
+        }
+    }
+
+    private void writeBatch(ObjectId id, int firstWriteNr, MappedByteBuffer region) {
+        List<Document> batch = new ArrayList<>();
+        List<byte[]> batchBuffers = new ArrayList<>();
+        try {
+            for (int n = firstWriteNr; region.hasRemaining(); n++) {
+                byte[] chunk = buffers.acquire(Math.min(chunkSize, region.remaining()));
+                region.get(chunk);
+                batchBuffers.add(chunk);
+                batch.add(new Document("files_id", id).append("n", n).append("data", new BsonBinary(codec.encode(chunk))));
+            }
+            chunkCollection.insertMany(batch, new InsertManyOptions().ordered(false));
+        } finally {
+            buffers.release(batchBuffers);
+        }
+    }
+
+    private void writeFile(ObjectId id, String name, String md5, long size, Document metadata) {
+        Document fileDocument = new Document("_id", id)
+                .append("length", size)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", md5)
+                .append("filename", name);
+        if (null != codec.codecName()) {
+            fileDocument.append("codec", codec.codecName());
+        }
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+        filesCollection.insertOne(fileDocument);
+    }
+}
@@ -0,0 +1,31 @@
+package gridfs.client;
+
+import com.github.luben.zstd.Zstd;
+
+/**
+ * keeps zstd-jni out of GridFsCodec, so it is only loaded when a zstd chunk is coded.
+ *
+ * @author siuming
+ */
+final class GridFileZstd {
+    private static final int LEVEL = 3;
+
+    private GridFileZstd() {
+    }
+
+    static byte[] compress(byte[] data) {
+        return Zstd.compress(data, LEVEL);
+    }
+
+    static byte[] decompress(byte[] data, int maxLength) {
+        // negative when the frame does not record its size or is not a zstd frame.
+        long length = Zstd.getFrameContentSize(data);
+        if (length < 0) {
+            throw new GridFsException(String.format("chunk data size unknown, code=%s.", length));
+        }
+        if (length > maxLength) {
+            throw new GridFsException(String.format("chunk data size=%s invalid.", length));
+        }
+        return Zstd.decompress(data, (int) length);
+    }
+}
@@ -0,0 +1,156 @@
+package gridfs.client;
+
+import com.mongodb.ReadConcern;
+import com.mongodb.WriteConcern;
+import com.mongodb.async.client.MongoDatabase;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Function;
+
+/**
+ * gridfs client on the mongodb async driver, operations never hold a thread while waiting on the server.
+ * callbacks run on the driver's io threads, so consumers and dependent stages must not block.
+ *
+ * @author siuming
+ */
+public class GridFsAsyncClient {
+
+    private final GridFileAsyncBucket bucket;
+
+    GridFsAsyncClient(Builder builder) {
+        this.bucket = new GridFileAsyncBucket(
+                builder.database,
+                builder.readConcern,
+                builder.writeConcern,
+                builder.bucketName,
+                builder.chunkSize,
+                builder.codec,
+                builder.batchBytes
+        );
+    }
+
+    public CompletableFuture<GridFile> get(ObjectId id) {
+        return bucket.get(id);
+    }
+
+    public CompletableFuture<GridFile> get(String md5) {
+        return bucket.get0(md5);
+    }
+
+    public CompletableFuture<Void> delete(ObjectId id) {
+        return bucket.delete(id);
+    }
+
+    public CompletableFuture<Void> delete(String md5) {
+        return bucket.delete0(md5);
+    }
+
+    public CompletableFuture<byte[]> download(ObjectId id) {
+        return bucket.read(id);
+    }
+
+    public CompletableFuture<byte[]> download(ObjectId id, long offset, long size) {
+        return bucket.readR(id, offset, size);
+    }
+
+    /**
+     * stream a file to a consumer chunk by chunk, the next chunk is passed once the stage returned for the previous one completes.
+     *
+     * @param id
+     * @param consumer
+     * @return
+     */
+    public CompletableFuture<Void> download(ObjectId id, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        return bucket.read0(id, consumer);
+    }
+
+    public CompletableFuture<Void> download(ObjectId id, long offset, long size, Function<ByteBuffer, ? extends CompletionStage<?>> consumer) {
+        return bucket.readR0(id, offset, size, consumer);
+    }
+
+    public CompletableFuture<ObjectId> upload(String filename, String md5, long size, Map<String, Object> metadata, byte[] content) {
+        return bucket.write(filename, md5, size, new Document(metadata), content);
+    }
+
+    public CompletableFuture<Void> modify(ObjectId id, long offset, byte[] content) {
+        return bucket.writeR(id, offset, content);
+    }
+
+    /**
+     * @return
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    public static class Builder {
+
+        MongoDatabase database;
+        ReadConcern readConcern = ReadConcern.DEFAULT;
+        WriteConcern writeConcern = WriteConcern.ACKNOWLEDGED;
+
+        String bucketName = "fs";
+        int chunkSize = 255 * 1024;
+        GridFsCodec codec = GridFsCodec.NONE;
+        int batchBytes = 16 * 1024 * 1024;
+
+        Builder() {
+        }
+
+        public Builder database(MongoDatabase database) {
+            this.database = database;
+            return this;
+        }
+
+        public Builder readConcern(ReadConcern readConcern) {
+            this.readConcern = readConcern;
+            return this;
+        }
+
+        public Builder writeConcern(WriteConcern writeConcern) {
+            this.writeConcern = writeConcern;
+            return this;
+        }
+
+        public Builder bucketName(String bucketName) {
+            this.bucketName = bucketName;
+            return this;
+        }
+
+        public Builder chunkSize(int chunkSize) {
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * codec new files store their chunks with, files are read with the codec they were written with.
+         *
+         * @param codec
+         * @return
+         */
+        public Builder codec(GridFsCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * max bytes of chunk data sent in one write round trip and fetched in one cursor batch.
+         *
+         * @param batchBytes
+         * @return
+         */
+        public Builder batchBytes(int batchBytes) {
+            this.batchBytes = batchBytes;
+            return this;
+        }
+
+        public GridFsAsyncClient build() {
+            return new GridFsAsyncClient(this);
+        }
+    }
+}
@@ -10,127 +10,369 @@ import java.io.Closeable;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 /**
  * @author siuming
  */
 public class GridFsClient implements Closeable {
 
-    private MongoDatabase database;
-    private ReadConcern readConcern;
-    private WriteConcern writeConcern;
-
-    private String bucketName;
-    private int chunkSize;
-
-    private ExecutorService executorService;
+    private final ExecutorService executorService;
+    private final boolean ownsExecutor;
+    private final GridFileCache cache;
+    private final GridFileBucket bucket;
+    private final GridFileFlights<ObjectId, GridFile> getFlights;
+    private final GridFileFlights<String, GridFile> get0Flights;
+    private final GridFileFlights<ObjectId, byte[]> readFlights;
+    private final GridFileFlights<List<Object>, byte[]> readRFlights;
 
     GridFsClient(Builder builder) {
-        this.database = builder.database;
-        this.readConcern = builder.readConcern;
-        this.writeConcern = builder.writeConcern;
-        this.bucketName = builder.bucketName;
-        this.chunkSize = builder.chunkSize;
-        this.executorService = Executors.newFixedThreadPool(builder.maxThreads);
+        this.executorService = null != builder.executorService
+                ? builder.executorService
+                : builder.virtualThreads ? GridFileExecutors.newVirtualThreadPerTaskExecutor(builder.maxThreads) : GridFileExecutors.newFixedThreadPool(builder.maxThreads);
+        this.ownsExecutor = null == builder.executorService;
+        this.cache = new GridFileCache(builder.cacheSize, builder.cacheTtl);
+        this.bucket = new GridFileBucket(
+                builder.database,
+                builder.readConcern,
+                builder.writeConcern,
+                builder.bucketName,
+                builder.chunkSize,
+                builder.codec,
+                builder.batchBytes,
+                builder.writeWindow,
+                builder.patchBytes,
+                builder.inlineBytes,
+                builder.batchIds,
+                builder.sweepPause,
+                builder.reuse,
+                builder.dedup,
+                executorService,
+                cache,
+                new GridFileChunkCache(builder.chunkCacheBytes),
+                new GridFileBuffers(builder.chunkSize, builder.bufferPoolBytes)
+        );
+        this.getFlights = new GridFileFlights<>(builder.singleFlight);
+        this.get0Flights = new GridFileFlights<>(builder.singleFlight);
+        this.readFlights = new GridFileFlights<>(builder.singleFlight);
+        this.readRFlights = new GridFileFlights<>(builder.singleFlight);
     }
 
     public CompletableFuture<GridFile> get(ObjectId id) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.get(id), executorService);
+        return getFlights.run(id, () -> CompletableFuture.supplyAsync(() -> bucket.get(id), executorService));
     }
 
     public CompletableFuture<GridFile> get(String md5) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.get0(md5), executorService);
+        return get0Flights.run(md5, () -> CompletableFuture.supplyAsync(() -> bucket.get0(md5), executorService));
+    }
+
+    /**
+     * get files by id with one query per batchIds ids not cached.
+     *
+     * @param ids
+     * @return files found in ids order, ids not found are left out.
+     */
+    public CompletableFuture<Map<ObjectId, GridFile>> get(Collection<ObjectId> ids) {
+        return CompletableFuture.supplyAsync(() -> bucket.getM(ids), executorService);
+    }
+
+    /**
+     * get files by md5 with one query per batchIds md5s not cached.
+     *
+     * @param md5s
+     * @return one file per md5 found in md5s order, md5s not found are left out.
+     */
+    public CompletableFuture<Map<String, GridFile>> getByMd5(Collection<String> md5s) {
+        return CompletableFuture.supplyAsync(() -> bucket.getM0(md5s), executorService);
     }
 
     public CompletableFuture<Void> delete(ObjectId id) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.delete(id);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bucket.delete(id);
+            } finally {
+                release(id);
+            }
+        }, executorService);
     }
 
     public CompletableFuture<Void> delete(String md5) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.delete0(md5);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bucket.delete0(md5);
+            } finally {
+                releaseAll();
+            }
+        }, executorService);
+    }
+
+    /**
+     * delete files batchIds at a time, each batch removes its files documents with one query and their chunks with another.
+     *
+     * @param ids
+     * @return
+     */
+    public CompletableFuture<GridFsDeleteResult> delete(Collection<ObjectId> ids) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return bucket.deleteM(ids);
+            } finally {
+                releaseAll();
+            }
+        }, executorService);
+    }
+
+    /**
+     * delete one file per md5, batchIds at a time.
+     *
+     * @param md5s
+     * @return
+     */
+    public CompletableFuture<GridFsDeleteResult> deleteByMd5(Collection<String> md5s) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return bucket.deleteM0(md5s);
+            } finally {
+                releaseAll();
+            }
+        }, executorService);
     }
 
     public CompletableFuture<byte[]> download(ObjectId id) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.read(id), executorService);
+        return readFlights.run(id, () -> CompletableFuture.supplyAsync(() -> bucket.read(id), executorService));
+    }
+
+    /**
+     * download files batchIds at a time, files of one chunk are read with one files query and one chunk query per batch.
+     * larger files are read one by one.
+     *
+     * @param ids
+     * @return file content in ids order, ids not found are left out.
+     */
+    public CompletableFuture<Map<ObjectId, byte[]>> download(Collection<ObjectId> ids) {
+        return CompletableFuture.supplyAsync(() -> bucket.readM(ids), executorService);
     }
 
     public CompletableFuture<byte[]> download(ObjectId id, long offset, long size) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.readR(id, offset, size), executorService);
+        return readRFlights.run(Arrays.asList(id, offset, size), () -> CompletableFuture.supplyAsync(() -> bucket.readR(id, offset, size), executorService));
     }
 
     public CompletableFuture<Void> download(ObjectId id, OutputStream out) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.read0(id, out);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> bucket.read0(id, out), executorService);
     }
 
     public CompletableFuture<Void> download(ObjectId id, long offset, long size, OutputStream out) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.readR0(id, offset, size, out);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> bucket.readR0(id, offset, size, out), executorService);
+    }
+
+    /**
+     * download a file into a channel, chunks are written without copying and a file channel is written by position.
+     *
+     * @param id
+     * @param out
+     * @return
+     */
+    public CompletableFuture<Void> download(ObjectId id, WritableByteChannel out) {
+        return CompletableFuture.runAsync(() -> bucket.read1(id, out), executorService);
+    }
+
+    public CompletableFuture<Void> download(ObjectId id, long offset, long size, WritableByteChannel out) {
+        return CompletableFuture.runAsync(() -> bucket.readR1(id, offset, size, out), executorService);
+    }
+
+    /**
+     * download a file into a local file, chunk ranges are written to their mapped regions, up to writeWindow ranges are fetched concurrently.
+     * ranges are fetched one after another on the calling thread when writeWindow is 0.
+     *
+     * @param id
+     * @param out
+     * @return
+     */
+    public CompletableFuture<Void> download(ObjectId id, Path out) {
+        return CompletableFuture.runAsync(() -> bucket.read2(id, out), executorService);
+    }
+
+    /**
+     * download a file by fetching ranges of prefetch chunks, at most concurrency ranges are fetched at the same time.
+     *
+     * @param id
+     * @param concurrency
+     * @param prefetch
+     * @return
+     */
+    public CompletableFuture<byte[]> parallelDownload(ObjectId id, int concurrency, int prefetch) {
+        return CompletableFuture.supplyAsync(() -> bucket.readP(id, concurrency, prefetch), executorService);
+    }
+
+    /**
+     * download a file by fetching ranges of prefetch chunks, at most concurrency ranges are fetched ahead of out.
+     *
+     * @param id
+     * @param out
+     * @param concurrency
+     * @param prefetch
+     * @return
+     */
+    public CompletableFuture<Void> parallelDownload(ObjectId id, OutputStream out, int concurrency, int prefetch) {
+        return CompletableFuture.runAsync(() -> bucket.readP0(id, out, concurrency, prefetch), executorService);
+    }
+
+    /**
+     * open a read only channel over a file, up to prefetch chunks after the one being read are fetched ahead.
+     * a seek outside the fetched chunks drops them and fetches ahead from the new position.
+     *
+     * @param id
+     * @param prefetch
+     * @return
+     */
+    public CompletableFuture<SeekableByteChannel> open(ObjectId id, int prefetch) {
+        return CompletableFuture.supplyAsync(() -> bucket.readC(id, prefetch), executorService);
+    }
+
+    /**
+     * open a stream over a file, up to prefetch chunks after the one being read are fetched ahead, skips do not fetch.
+     *
+     * @param id
+     * @param prefetch
+     * @return
+     */
+    public CompletableFuture<InputStream> openStream(ObjectId id, int prefetch) {
+        return CompletableFuture.supplyAsync(() -> bucket.readC(id, prefetch).newInputStream(), executorService);
+    }
+
+    /**
+     * open an upload of data whose length is not known up front, the file is stored with the written length on close.
+     * chunks are sent while data is written, an aborted or failed upload deletes them.
+     * batches are sent on the executor only when writeWindow is greater than 0, see openUpload with a window.
+     *
+     * @param filename
+     * @param metadata
+     * @return
+     */
+    public GridFsUpload openUpload(String filename, Map<String, Object> metadata) {
+        return bucket.writeS(filename, new Document(metadata));
+    }
+
+    /**
+     * open an upload whose chunk batches are sent on the executor, at most window batches in flight.
+     *
+     * @param filename
+     * @param metadata
+     * @param window   max batches in flight, batches are sent on the writing thread when it is 0.
+     * @return
+     */
+    public GridFsUpload openUpload(String filename, Map<String, Object> metadata, int window) {
+        return bucket.writeS(filename, new Document(metadata), window);
     }
 
     public CompletableFuture<ObjectId> upload(String filename, String md5, long size, Map<String, Object> metadata, byte[] content) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.write(filename, md5, size, new Document(metadata), content), executorService);
+        return CompletableFuture.supplyAsync(() -> bucket.write(filename, md5, size, new Document(metadata), content), executorService);
     }
 
+    /**
+     * upload a stream, its md5 and sha-256 are computed while the chunks are written and stored with the file.
+     *
+     * @param filename
+     * @param md5      expected md5, the upload fails on mismatch. the computed md5 is stored when null or empty.
+     * @param size
+     * @param metadata
+     * @param content
+     * @return
+     */
     public CompletableFuture<ObjectId> upload(String filename, String md5, long size, Map<String, Object> metadata, InputStream content) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> bucket.write0(filename, md5, size, new Document(metadata), content), executorService);
+        return upload(filename, md5, null, size, metadata, content);
+    }
+
+    /**
+     * @param filename
+     * @param md5      expected md5, ignored when null or empty.
+     * @param sha256   expected sha-256, ignored when null or empty.
+     * @param size
+     * @param metadata
+     * @param content
+     * @return
+     */
+    public CompletableFuture<ObjectId> upload(String filename, String md5, String sha256, long size, Map<String, Object> metadata, InputStream content) {
+        return CompletableFuture.supplyAsync(() -> bucket.write0(filename, md5, sha256, size, new Document(metadata), content), executorService);
+    }
+
+    /**
+     * upload a local file, the file is mapped and up to writeWindow of its chunk batches are written concurrently.
+     * batches are written one after another on the calling thread when writeWindow is 0.
+     *
+     * @param filename
+     * @param md5
+     * @param metadata
+     * @param content
+     * @return
+     */
+    public CompletableFuture<ObjectId> upload(String filename, String md5, Map<String, Object> metadata, Path content) {
+        return CompletableFuture.supplyAsync(() -> bucket.write1(filename, md5, new Document(metadata), content), executorService);
     }
 
     public CompletableFuture<Void> modify(ObjectId id, long offset, byte[] content) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.writeR(id, offset, content);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bucket.writeR(id, offset, content);
+            } finally {
+                release(id);
+            }
+        }, executorService);
     }
 
     public CompletableFuture<Void> modify(ObjectId id, long offset, InputStream content) {
-        return CompletableFuture
-                .supplyAsync(() -> new GridFileBucket(database, readConcern, writeConcern, bucketName, chunkSize), executorService)
-                .thenApplyAsync(bucket -> {
-                    bucket.writeR0(id, offset, content);
-                    return null;
-                }, executorService);
+        return CompletableFuture.runAsync(() -> {
+            try {
+                bucket.writeR0(id, offset, content);
+            } finally {
+                release(id);
+            }
+        }, executorService);
+    }
+
+    /**
+     * @return lookups served by the file cache.
+     */
+    public long cacheHits() {
+        return cache.hits();
+    }
+
+    /**
+     * @return lookups the file cache could not serve.
+     */
+    public long cacheMisses() {
+        return cache.misses();
+    }
+
+    // requests made after a file changed must not join a request started before.
+    private void release(ObjectId id) {
+        getFlights.release(id::equals);
+        get0Flights.release(md5 -> true);
+        readFlights.release(id::equals);
+        readRFlights.release(key -> id.equals(key.get(0)));
+    }
+
+    // deletes by md5 and batch deletes do not track the ids they changed, so every request is released.
+    private void releaseAll() {
+        getFlights.release(id -> true);
+        get0Flights.release(md5 -> true);
+        readFlights.release(id -> true);
+        readRFlights.release(key -> true);
     }
 
     @Override
     public void close() throws IOException {
-        executorService.shutdown();
+        if (ownsExecutor) {
+            executorService.shutdown();
+        }
     }
 
     /**
@@ -148,7 +390,23 @@ public class GridFsClient implements Closeable {
 
         String bucketName = "fs";
         int chunkSize = 255 * 1024;
+        GridFsCodec codec = GridFsCodec.NONE;
+        int batchBytes = 16 * 1024 * 1024;
+        int writeWindow = 0;
+        int patchBytes = 0;
+        int inlineBytes = 0;
+        int batchIds = 1000;
+        long sweepPause = 0;
+        boolean singleFlight = false;
+        boolean reuse = false;
+        boolean dedup = false;
         int maxThreads = 50;
+        boolean virtualThreads = false;
+        ExecutorService executorService;
+        int cacheSize = 0;
+        long cacheTtl = 60 * 1000;
+        long chunkCacheBytes = 0;
+        long bufferPoolBytes = 32 * 1024 * 1024;
 
         Builder() {
         }
@@ -178,11 +436,190 @@ public class GridFsClient implements Closeable {
             return this;
         }
 
+        /**
+         * codec new files store their chunks with, files are read with the codec they were written with.
+         *
+         * @param codec
+         * @return
+         */
+        public Builder codec(GridFsCodec codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * max bytes of chunk data sent in one insert round trip, chunks are inserted one by one when it is not greater than chunkSize.
+         *
+         * @param batchBytes
+         * @return
+         */
+        public Builder batchBytes(int batchBytes) {
+            this.batchBytes = batchBytes;
+            return this;
+        }
+
+        /**
+         * max chunk batches of one transfer written concurrently while the next batch is read, batches are written on the calling thread when it is 0.
+         *
+         * @param writeWindow
+         * @return
+         */
+        public Builder writeWindow(int writeWindow) {
+            this.writeWindow = writeWindow;
+            return this;
+        }
+
+        /**
+         * max bytes of a modify inside one chunk sent as a patch of the stored chunk instead of rewriting it, patches are disabled when it is 0.
+         *
+         * @param patchBytes
+         * @return
+         */
+        public Builder patchBytes(int patchBytes) {
+            this.patchBytes = patchBytes;
+            return this;
+        }
+
+        /**
+         * max bytes of a new file stored in its files document instead of chunks, capped at chunkSize.
+         * files are never inlined when it is 0.
+         *
+         * @param inlineBytes
+         * @return
+         */
+        public Builder inlineBytes(int inlineBytes) {
+            this.inlineBytes = inlineBytes;
+            return this;
+        }
+
+        /**
+         * max ids or md5s sent in one query by the batch operations.
+         *
+         * @param batchIds
+         * @return
+         */
+        public Builder batchIds(int batchIds) {
+            this.batchIds = batchIds;
+            return this;
+        }
+
+        /**
+         * millis a batch delete pauses between batches to spare the primary, batches are not paused when it is 0.
+         *
+         * @param sweepPause
+         * @return
+         */
+        public Builder sweepPause(long sweepPause) {
+            this.sweepPause = sweepPause;
+            return this;
+        }
+
+        /**
+         * an upload whose md5 and length match a stored file only inserts a files document sharing that file's chunks,
+         * the content is not read. shared chunks are removed with the last file referring to them and can not be modified.
+         *
+         * @param reuse
+         * @return
+         */
+        public Builder reuse(boolean reuse) {
+            this.reuse = reuse;
+            return this;
+        }
+
+        /**
+         * store new files as content defined blocks shared by every file of the bucket, a block already stored is never sent again.
+         * deduplicated files can not be modified.
+         *
+         * @param dedup
+         * @return
+         */
+        public Builder dedup(boolean dedup) {
+            this.dedup = dedup;
+            return this;
+        }
+
+        /**
+         * get and download requests made while an identical request is running share its result, the content array included.
+         *
+         * @param singleFlight
+         * @return
+         */
+        public Builder singleFlight(boolean singleFlight) {
+            this.singleFlight = singleFlight;
+            return this;
+        }
+
         public Builder maxThreads(int maxThreads) {
             this.maxThreads = maxThreads;
             return this;
         }
 
+        /**
+         * run each operation on its own virtual thread, a fixed pool of maxThreads is used when the jdk has no virtual threads.
+         *
+         * @param virtualThreads
+         * @return
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * run operations on a caller supplied executor, it is not shut down when the client is closed.
+         *
+         * @param executorService
+         * @return
+         */
+        public Builder executorService(ExecutorService executorService) {
+            this.executorService = executorService;
+            return this;
+        }
+
+        /**
+         * max files cached by id and md5, the cache is disabled when it is 0.
+         *
+         * @param cacheSize
+         * @return
+         */
+        public Builder cacheSize(int cacheSize) {
+            this.cacheSize = cacheSize;
+            return this;
+        }
+
+        /**
+         * millis a cached file lives, cached files never expire when it is 0.
+         *
+         * @param cacheTtl
+         * @return
+         */
+        public Builder cacheTtl(long cacheTtl) {
+            this.cacheTtl = cacheTtl;
+            return this;
+        }
+
+        /**
+         * max bytes of chunk data cached for range downloads, the chunk cache is disabled when it is 0.
+         *
+         * @param chunkCacheBytes
+         * @return
+         */
+        public Builder chunkCacheBytes(long chunkCacheBytes) {
+            this.chunkCacheBytes = chunkCacheBytes;
+            return this;
+        }
+
+        /**
+         * max bytes of free chunk buffers kept for reuse by uploads and modifies, buffers are not pooled when it is 0.
+         *
+         * @param bufferPoolBytes
+         * @return
+         */
+        public Builder bufferPoolBytes(long bufferPoolBytes) {
+            this.bufferPoolBytes = bufferPoolBytes;
+            return this;
+        }
+
         public GridFsClient build() {
             return new GridFsClient(this);
         }
@@ -0,0 +1,112 @@
+package gridfs.client;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * codec of stored chunk data, files record the codec their chunks are written with.
+ * zstd needs com.github.luben:zstd-jni on the classpath.
+ *
+ * @author siuming
+ */
+public enum GridFsCodec {
+    NONE(null) {
+        @Override
+        byte[] encode(byte[] data) {
+            return data;
+        }
+
+        @Override
+        byte[] decode(byte[] data, int maxLength) {
+            return data;
+        }
+    },
+    DEFLATE("deflate") {
+        @Override
+        byte[] encode(byte[] data) {
+            Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+            try {
+                deflater.setInput(data);
+                deflater.finish();
+                ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 2 + 64);
+                byte[] buf = new byte[8192];
+                while (!deflater.finished()) {
+                    out.write(buf, 0, deflater.deflate(buf));
+                }
+                return out.toByteArray();
+            } finally {
+                deflater.end();
+            }
+        }
+
+        @Override
+        byte[] decode(byte[] data, int maxLength) {
+            Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(data);
+                byte[] chunk = new byte[maxLength];
+                int length = 0;
+                while (length < maxLength && !inflater.finished()) {
+                    int inflated = inflater.inflate(chunk, length, maxLength - length);
+                    if (inflated == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                        throw new GridFsException("chunk data truncated.");
+                    }
+                    length = length + inflated;
+                }
+                return length == maxLength ? chunk : Arrays.copyOf(chunk, length);
+            } catch (DataFormatException e) {
+                throw new GridFsException(e);
+            } finally {
+                inflater.end();
+            }
+        }
+    },
+    ZSTD("zstd") {
+        @Override
+        byte[] encode(byte[] data) {
+            return GridFileZstd.compress(data);
+        }
+
+        @Override
+        byte[] decode(byte[] data, int maxLength) {
+            return GridFileZstd.decompress(data, maxLength);
+        }
+    };
+
+    private final String codecName;
+
+    GridFsCodec(String codecName) {
+        this.codecName = codecName;
+    }
+
+    /**
+     * @return name recorded in the files document, null when chunks are stored as is.
+     */
+    String codecName() {
+        return codecName;
+    }
+
+    abstract byte[] encode(byte[] data);
+
+    /**
+     * @param data
+     * @param maxLength chunk size of the file.
+     * @return
+     */
+    abstract byte[] decode(byte[] data, int maxLength);
+
+    static GridFsCodec of(String codecName) {
+        if (null == codecName) {
+            return NONE;
+        }
+        for (GridFsCodec codec : values()) {
+            if (codecName.equals(codec.codecName)) {
+                return codec;
+            }
+        }
+        throw new GridFsException(String.format("codec[name=%s] not supported.", codecName));
+    }
+}
@@ -0,0 +1,33 @@
+package gridfs.client;
+
+/**
+ * @author siuming
+ */
+public final class GridFsDeleteResult {
+    private final long deletedFiles;
+    private final long deletedChunks;
+
+    GridFsDeleteResult(long deletedFiles, long deletedChunks) {
+        this.deletedFiles = deletedFiles;
+        this.deletedChunks = deletedChunks;
+    }
+
+    public long deletedFiles() {
+        return deletedFiles;
+    }
+
+    /**
+     * @return chunks removed from the chunks collection, chunks still read by other files and deduplicated blocks are not counted.
+     */
+    public long deletedChunks() {
+        return deletedChunks;
+    }
+
+    @Override
+    public String toString() {
+        return "GridFsDeleteResult{" +
+                "deletedFiles=" + deletedFiles +
+                ", deletedChunks=" + deletedChunks +
+                '}';
+    }
+}
@@ -0,0 +1,230 @@
+package gridfs.client;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.BsonBinary;
+import org.bson.BsonDateTime;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+
+/**
+ * upload of data whose length is not known up front, chunks are cut as data is written and sent in batches.
+ * batches are sent on the executor when the window is greater than 0, otherwise on the writing thread.
+ * the file is stored with the written length on close, an abort or a failed write deletes the chunks already sent.
+ *
+ * @author siuming
+ */
+public final class GridFsUpload extends OutputStream implements WritableByteChannel {
+    private final ObjectId id;
+    private final String name;
+    private final Document metadata;
+    private final MongoCollection<Document> filesCollection;
+    private final MongoCollection<Document> chunkCollection;
+    private final int chunkSize;
+    private final GridFsCodec codec;
+    private final int batchBytes;
+    private final GridFileBuffers buffers;
+    private final GridFileWindow<Void> window;
+    private final GridFileDigest digest;
+
+    private List<Document> batch = new ArrayList<>();
+    private List<byte[]> batchBuffers = new ArrayList<>();
+    private int batchedBytes = 0;
+
+    private byte[] buf;
+    private int bufBytes = 0;
+    private int chunkNr = 0;
+    private long length = 0;
+    private boolean open = true;
+
+    GridFsUpload(ObjectId id, String name, Document metadata, MongoCollection<Document> filesCollection, MongoCollection<Document> chunkCollection, int chunkSize, GridFsCodec codec, int batchBytes, Executor executor, int writeWindow, GridFileBuffers buffers) {
+        this.id = id;
+        this.name = name;
+        this.metadata = metadata;
+        this.filesCollection = filesCollection;
+        this.chunkCollection = chunkCollection;
+        this.chunkSize = chunkSize;
+        this.codec = codec;
+        this.batchBytes = batchBytes;
+        this.buffers = buffers;
+        this.window = new GridFileWindow<>(executor, writeWindow);
+        this.digest = new GridFileDigest(executor, batchBytes);
+    }
+
+    /**
+     * @return id of the file stored on close.
+     */
+    public ObjectId id() {
+        return id;
+    }
+
+    @Override
+    public synchronized void write(int b) throws IOException {
+        write(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public synchronized void write(byte[] b, int off, int len) throws IOException {
+        write(ByteBuffer.wrap(b, off, len));
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer src) throws IOException {
+        ensureOpen();
+        int writeBytes = src.remaining();
+        try {
+            while (src.hasRemaining()) {
+                if (null == buf) {
+                    buf = buffers.acquire(chunkSize);
+                }
+                int length = Math.min(src.remaining(), chunkSize - bufBytes);
+                src.get(buf, bufBytes, length);
+                bufBytes = bufBytes + length;
+                if (bufBytes == chunkSize) {
+                    writeChunk();
+                }
+            }
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException(e.getMessage(), e);
+        }
+        return writeBytes;
+    }
+
+    /**
+     * chunks are sent once they are full, a flush does not send a partial chunk.
+     */
+    @Override
+    public void flush() throws IOException {
+        ensureOpen();
+    }
+
+    @Override
+    public synchronized boolean isOpen() {
+        return open;
+    }
+
+    /**
+     * send the remaining data and store the file, the upload is aborted when it fails.
+     */
+    @Override
+    public synchronized void close() throws IOException {
+        if (!open) {
+            return;
+        }
+
+        try {
+            if (bufBytes > 0) {
+                writeChunk();
+            }
+            if (null != buf) {
+                buffers.release(buf);
+                buf = null;
+            }
+            if (!batch.isEmpty()) {
+                writeBatch();
+            }
+            while (!window.isEmpty()) {
+                window.take();
+            }
+            digest.finish();
+            writeFile();
+        } catch (RuntimeException e) {
+            abort();
+            throw new IOException(e.getMessage(), e);
+        }
+        open = false;
+    }
+
+    /**
+     * drop the upload and delete the chunks already sent, nothing is stored.
+     */
+    public synchronized void abort() {
+        if (!open) {
+            return;
+        }
+
+        open = false;
+        window.cancel();
+        chunkCollection.deleteMany(Filters.eq("files_id", id));
+        if (null != buf) {
+            buffers.release(buf);
+            buf = null;
+        }
+    }
+
+    private void writeChunk() {
+        byte[] chunk = buf;
+        if (bufBytes != chunkSize) {
+            chunk = new byte[bufBytes];
+            System.arraycopy(buf, 0, chunk, 0, bufBytes);
+        } else {
+            buf = null;
+        }
+        digest.update(chunk);
+
+        if (!batch.isEmpty() && batchedBytes + bufBytes > batchBytes) {
+            writeBatch();
+        }
+        batchBuffers.add(chunk);
+        batch.add(new Document("files_id", id).append("n", chunkNr).append("data", new BsonBinary(codec.encode(chunk))));
+        batchedBytes = batchedBytes + bufBytes;
+        length = length + bufBytes;
+        bufBytes = 0;
+        chunkNr++;
+    }
+
+    // a chunk buffer goes back to the pool once its batch is sent and the digest has passed it.
+    private void writeBatch() {
+        while (window.isFull()) {
+            window.take();
+        }
+
+        List<Document> requests = batch;
+        List<byte[]> requestBuffers = batchBuffers;
+        window.submit(() -> {
+            try {
+                chunkCollection.insertMany(requests, new InsertManyOptions().ordered(false));
+            } finally {
+                digest.after(() -> buffers.release(requestBuffers));
+            }
+            return null;
+        });
+        batch = new ArrayList<>();
+        batchBuffers = new ArrayList<>();
+        batchedBytes = 0;
+    }
+
+    private void writeFile() {
+        Document fileDocument = new Document("_id", id)
+                .append("length", length)
+                .append("chunkSize", chunkSize)
+                .append("uploadDate", new BsonDateTime(System.currentTimeMillis()))
+                .append("md5", digest.md5())
+                .append("sha256", digest.sha256())
+                .append("filename", name);
+        if (null != codec.codecName()) {
+            fileDocument.append("codec", codec.codecName());
+        }
+        if (null != metadata && !metadata.isEmpty()) {
+            fileDocument.append("metadata", metadata);
+        }
+        filesCollection.insertOne(fileDocument);
+    }
+
+    private void ensureOpen() throws IOException {
+        if (!open) {
+            throw new ClosedChannelException();
+        }
+    }
+}
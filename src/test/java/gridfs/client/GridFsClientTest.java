@@ -3,17 +3,38 @@ package gridfs.client;
 import com.mongodb.MongoClient;
 import com.mongodb.MongoClientURI;
 import com.mongodb.client.MongoDatabase;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
 import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.Binary;
 import org.bson.types.ObjectId;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
 
+import java.io.ByteArrayInputStream;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SeekableByteChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 /**
  * @author siuming
@@ -40,6 +61,69 @@ public class GridFsClientTest {
         System.out.println(gridFile);
     }
 
+    @Test
+    public void testGetLatency() throws Exception {
+        ObjectId id = new ObjectId("56d641b28314bfddf13bc45c");
+        for (int i = 0; i < 1000; i++) {
+            client.get(id).get();
+        }
+
+        int times = 10000;
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        for (int i = 0; i < times; i++) {
+            client.get(id).get();
+        }
+        long elapsed = System.nanoTime() - start;
+        System.out.println("get latency: " + (elapsed / times / 1000) + "us, allocated: " + ((allocatedBytes() - allocated) / times) + "B/op");
+    }
+
+    @Test
+    public void testGetCache() throws Exception {
+        GridFsClient cacheClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .cacheSize(1000)
+                .cacheTtl(60 * 1000)
+                .build();
+        ObjectId id = new ObjectId("56d641b28314bfddf13bc45c");
+        for (int i = 0; i < 100; i++) {
+            cacheClient.download(id, 0, 1024).get();
+        }
+        System.out.println("cache hits: " + cacheClient.cacheHits() + ", misses: " + cacheClient.cacheMisses());
+        cacheClient.close();
+    }
+
+    @Test
+    public void testGetCacheDelete() throws Exception {
+        GridFsClient cacheClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .cacheSize(1000)
+                .cacheTtl(0)
+                .build();
+        byte[] content = new byte[64 * 1024];
+        new Random().nextBytes(content);
+
+        int stale = 0;
+        for (int i = 0; i < 100; i++) {
+            ObjectId id = cacheClient.upload("cached.bin", "", content.length, new Document(), content).get();
+            List<CompletableFuture<GridFile>> gets = new ArrayList<>();
+            for (int j = 0; j < 8; j++) {
+                gets.add(cacheClient.get(id));
+            }
+            CompletableFuture<Void> delete = cacheClient.delete(id);
+            for (int j = 0; j < 8; j++) {
+                gets.add(cacheClient.get(id));
+            }
+            CompletableFuture.allOf(gets.toArray(new CompletableFuture<?>[0])).get();
+            delete.get();
+            if (null != cacheClient.get(id).get()) {
+                stale++;
+            }
+        }
+        System.out.println("deleted files still cached: " + stale);
+        cacheClient.close();
+    }
+
     @Test
     public void testGet0() throws Exception {
         CompletableFuture<GridFile> result = client.get("8222445d9ffa9ca5d06c1409f5aab0d8");
@@ -61,6 +145,28 @@ public class GridFsClientTest {
         result.get();
     }
 
+    @Test
+    public void testRead1() throws Exception {
+        try (FileChannel out = FileChannel.open(Paths.get("/tmp/test-read1.jpg"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            CompletableFuture<Void> result = client.download(new ObjectId("56d641b28314bfddf13bc45c"), out);
+            result.get();
+        }
+    }
+
+    @Test
+    public void testReadParallel() throws Exception {
+        CompletableFuture<byte[]> result = client.parallelDownload(new ObjectId("56d641b28314bfddf13bc45c"), 4, 16);
+        byte[] content = result.get();
+        System.out.println(content.length);
+    }
+
+    @Test
+    public void testReadParallel0() throws Exception {
+        OutputStream out = new FileOutputStream("/tmp/test-read-parallel.jpg");
+        CompletableFuture<Void> result = client.parallelDownload(new ObjectId("56d641b28314bfddf13bc45c"), out, 4, 16);
+        result.get();
+    }
+
     @Test
     public void testReadRandom() throws Exception {
         CompletableFuture<byte[]> result = client.download(new ObjectId("56d641b28314bfddf13bc45c"), 0, 461218);
@@ -75,6 +181,40 @@ public class GridFsClientTest {
         result.get();
     }
 
+    @Test
+    public void testReadRandomCache() throws Exception {
+        GridFsClient cacheClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .chunkCacheBytes(64 * 1024 * 1024)
+                .build();
+        ObjectId id = new ObjectId("56d641b28314bfddf13bc45c");
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < 1000; i++) {
+            cacheClient.download(id, 1024, 4096).get();
+        }
+        System.out.println("cached range read: " + (System.currentTimeMillis() - start) + "ms");
+        cacheClient.close();
+    }
+
+    @Test
+    public void testAsyncReadLoad() throws Exception {
+        com.mongodb.async.client.MongoClient asyncMongo = com.mongodb.async.client.MongoClients.create("mongodb://172.16.1.248:27017/workplus?maxPoolSize=50&waitQueueMultiple=200");
+        GridFsAsyncClient asyncClient = GridFsAsyncClient.newBuilder()
+                .database(asyncMongo.getDatabase("workplus"))
+                .build();
+        ObjectId id = new ObjectId("56d641b28314bfddf13bc45c");
+
+        int downloads = 5000;
+        List<CompletableFuture<byte[]>> results = new ArrayList<>(downloads);
+        long start = System.currentTimeMillis();
+        for (int i = 0; i < downloads; i++) {
+            results.add(asyncClient.download(id));
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[downloads])).get();
+        System.out.println(downloads + " concurrent downloads: " + (System.currentTimeMillis() - start) + "ms, threads: " + Thread.activeCount());
+        asyncMongo.close();
+    }
+
     @Test
     public void testWrite() throws Exception {
         CompletableFuture<byte[]> readResult = client.download(new ObjectId("56d641b28314bfddf13bc45c"));
@@ -103,6 +243,35 @@ public class GridFsClientTest {
 
     }
 
+    @Test
+    public void testWrite1() throws Exception {
+        CompletableFuture<ObjectId> writeResult = client.upload("abc.jpg", "", new Document(), Paths.get("/tmp/test-read0.jpg"));
+        ObjectId id = writeResult.get();
+        System.out.println(id);
+
+        CompletableFuture<Void> result = client.download(id, Paths.get("/tmp/test-read2-after-write1.jpg"));
+        result.get();
+    }
+
+    @Test
+    public void testWriteDigest() throws Exception {
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random().nextBytes(content);
+
+        long start = System.currentTimeMillis();
+        ObjectId id = client.upload("digest.bin", "", content.length, new Document(), new ByteArrayInputStream(content)).get();
+        long writeMillis = Math.max(1, System.currentTimeMillis() - start);
+        GridFile gridFile = client.get(id).get();
+        System.out.println("write: " + (content.length / 1024 / writeMillis) + "MB/s, md5: " + gridFile.md5() + ", sha256: " + gridFile.sha256());
+
+        try {
+            client.upload("digest.bin", "00000000000000000000000000000000", content.length, new Document(), new ByteArrayInputStream(content)).get();
+        } catch (Exception e) {
+            System.out.println(e.getMessage());
+        }
+        client.delete(id).get();
+    }
+
     @Test
     public void testWriteRandom() throws Exception {
         CompletableFuture<byte[]> readResult = client.download(new ObjectId("56d641b28314bfddf13bc45c"));
@@ -138,6 +307,568 @@ public class GridFsClientTest {
         result.get();
     }
 
+    @Test
+    public void testWriteBatch() throws Exception {
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random().nextBytes(content);
+
+        GridFsClient singleClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .batchBytes(0)
+                .build();
+        long start = System.currentTimeMillis();
+        ObjectId singleId = singleClient.upload("single.bin", "", content.length, new Document(), content).get();
+        System.out.println("single insert: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        ObjectId batchId = client.upload("batch.bin", "", content.length, new Document(), content).get();
+        System.out.println("batch insert: " + (System.currentTimeMillis() - start) + "ms");
+
+        singleClient.delete(singleId).get();
+        client.delete(batchId).get();
+        singleClient.close();
+    }
+
+    @Test
+    public void testWriteWindow() throws Exception {
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random().nextBytes(content);
+
+        GridFsClient windowClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .batchBytes(4 * 1024 * 1024)
+                .writeWindow(4)
+                .build();
+        long start = System.currentTimeMillis();
+        ObjectId id = windowClient.upload("window.bin", "", content.length, new Document(), new ByteArrayInputStream(content)).get();
+        System.out.println("window insert: " + (System.currentTimeMillis() - start) + "ms");
+
+        windowClient.delete(id).get();
+        windowClient.close();
+    }
+
+    @Test
+    public void testModifyBatch() throws Exception {
+        GridFsClient singleClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .batchBytes(0)
+                .build();
+        for (long size : new long[]{1024 * 1024, 100 * 1024 * 1024, 1024 * 1024 * 1024}) {
+            ObjectId id = client.upload("modify.bin", "", size + 100, new Document(), new byte[0]).get();
+
+            long start = System.currentTimeMillis();
+            singleClient.modify(id, 100, new RandomInputStream(size)).get();
+            System.out.println(size + " bytes single modify: " + (System.currentTimeMillis() - start) + "ms");
+
+            start = System.currentTimeMillis();
+            client.modify(id, 100, new RandomInputStream(size)).get();
+            System.out.println(size + " bytes batch modify: " + (System.currentTimeMillis() - start) + "ms");
+            client.delete(id).get();
+        }
+        singleClient.close();
+    }
+
+    @Test
+    public void testModifyPatch() throws Exception {
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random().nextBytes(content);
+        ObjectId id = client.upload("patch.bin", "", content.length, new Document(), content).get();
+
+        GridFsClient patchClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .patchBytes(1024)
+                .build();
+        GridFsClient[] clients = {client, patchClient};
+        String[] names = {"rewrite", "patch"};
+        Random random = new Random();
+        for (int c = 0; c < clients.length; c++) {
+            int edits = 1000;
+            long moved = networkBytes();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < edits; i++) {
+                byte[] edit = new byte[16];
+                random.nextBytes(edit);
+                clients[c].modify(id, random.nextInt(content.length - edit.length), edit).get();
+            }
+            System.out.println(names[c] + " 16 bytes edit: " + ((System.currentTimeMillis() - start) * 1000 / edits) + "us, moved: " + ((networkBytes() - moved) / edits) + "B/op");
+        }
+        client.delete(id).get();
+        patchClient.close();
+    }
+
+    @Test
+    public void testBufferPool() throws Exception {
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random().nextBytes(content);
+
+        for (long poolBytes : new long[]{0, 32 * 1024 * 1024}) {
+            GridFsClient poolClient = GridFsClient.newBuilder()
+                    .database(mongo.getDatabase("workplus"))
+                    .bufferPoolBytes(poolBytes)
+                    .build();
+            ObjectId id = poolClient.upload("pool.bin", "", content.length, new Document(), content).get();
+
+            long allocated = allocatedBytes();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 8; i++) {
+                poolClient.upload("pool.bin", "", content.length, new Document(), new ByteArrayInputStream(content)).thenCompose(poolClient::delete).get();
+                poolClient.modify(id, 0, new ByteArrayInputStream(content)).get();
+            }
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            long transferred = 16L * content.length;
+            System.out.println("pool=" + poolBytes + " allocated: " + ((allocatedBytes() - allocated) * 1024 / transferred) + "MB/GB, throughput: " + (transferred / 1024 / millis) + "MB/s");
+
+            poolClient.delete(id).get();
+            poolClient.close();
+        }
+    }
+
+    @Test
+    public void testChunkDecode() throws Exception {
+        byte[] data = new byte[255 * 1024];
+        new Random().nextBytes(data);
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new DocumentCodec().encode(new BsonBinaryWriter(buffer),
+                new Document("_id", new ObjectId()).append("files_id", new ObjectId()).append("n", 0).append("data", new Binary(data)),
+                EncoderContext.builder().build());
+        byte[] bson = buffer.toByteArray();
+
+        int rounds = 20000;
+        for (int pass = 0; pass < 2; pass++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                Document fileChunk = new DocumentCodec().decode(new BsonBinaryReader(ByteBuffer.wrap(bson)), DecoderContext.builder().build());
+                fileChunk.get("data", Binary.class).getData();
+            }
+            long documentNanos = System.nanoTime() - start;
+            long documentAllocated = allocatedBytes() - allocated;
+
+            GridFileChunkCodec codec = new GridFileChunkCodec();
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            for (int i = 0; i < rounds; i++) {
+                codec.decode(new BsonBinaryReader(ByteBuffer.wrap(bson)), DecoderContext.builder().build());
+            }
+            long chunkNanos = System.nanoTime() - start;
+            long chunkAllocated = allocatedBytes() - allocated;
+
+            long decodedBytes = (long) rounds * data.length;
+            System.out.println("document: " + (documentNanos * 1024 * 1024 / decodedBytes) + "ns/MB, " + ((double) documentAllocated / decodedBytes) + " bytes allocated/byte"
+                    + ", chunk: " + (chunkNanos * 1024 * 1024 / decodedBytes) + "ns/MB, " + ((double) chunkAllocated / decodedBytes) + " bytes allocated/byte");
+        }
+    }
+
+    @Test
+    public void testCodec() throws Exception {
+        StringBuilder json = new StringBuilder();
+        Random random = new Random();
+        while (json.length() < 64 * 1024 * 1024) {
+            json.append("{\"id\":").append(random.nextInt(1000000)).append(",\"name\":\"user").append(random.nextInt(1000)).append("\",\"active\":true}\n");
+        }
+        byte[] content = json.toString().getBytes("UTF-8");
+
+        for (GridFsCodec codec : GridFsCodec.values()) {
+            GridFsClient codecClient = GridFsClient.newBuilder()
+                    .database(mongo.getDatabase("workplus"))
+                    .codec(codec)
+                    .build();
+            long start = System.currentTimeMillis();
+            ObjectId id = codecClient.upload("codec.json", "", content.length, new Document(), content).get();
+            long writeMillis = Math.max(1, System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            codecClient.download(id).get();
+            long readMillis = Math.max(1, System.currentTimeMillis() - start);
+
+            long storedBytes = 0;
+            for (Document chunk : mongo.getDatabase("workplus").getCollection("fs.chunks").find(new Document("files_id", id))) {
+                storedBytes = storedBytes + chunk.get("data", Binary.class).length();
+            }
+            System.out.println(codec + " write: " + (content.length / 1024 / writeMillis) + "MB/s, read: " + (content.length / 1024 / readMillis) + "MB/s, ratio: " + ((double) content.length / storedBytes));
+            codecClient.delete(id).get();
+            codecClient.close();
+        }
+    }
+
+    @Test
+    public void testDedup() throws Exception {
+        GridFsClient dedupClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .bucketName("dedup")
+                .dedup(true)
+                .build();
+
+        // ten versions of a 32MB file, each one with a few small inserts and overwrites on top of the previous.
+        Random random = new Random();
+        byte[] version = new byte[32 * 1024 * 1024];
+        random.nextBytes(version);
+        List<ObjectId> ids = new ArrayList<>();
+        long logicalBytes = 0;
+        long start = System.currentTimeMillis();
+        for (int v = 0; v < 10; v++) {
+            for (int edit = 0; edit < 8; edit++) {
+                byte[] inserted = new byte[1 + random.nextInt(4096)];
+                random.nextBytes(inserted);
+                int offset = random.nextInt(version.length);
+                byte[] next = new byte[version.length + inserted.length];
+                System.arraycopy(version, 0, next, 0, offset);
+                System.arraycopy(inserted, 0, next, offset, inserted.length);
+                System.arraycopy(version, offset, next, offset + inserted.length, version.length - offset);
+                version = next;
+                version[random.nextInt(version.length)] = (byte) random.nextInt();
+            }
+            ids.add(dedupClient.upload("dedup.bin", "", version.length, new Document(), new ByteArrayInputStream(version)).get());
+            logicalBytes = logicalBytes + version.length;
+        }
+        long writeMillis = Math.max(1, System.currentTimeMillis() - start);
+
+        long storedBytes = 0;
+        for (Document block : mongo.getDatabase("workplus").getCollection("dedup.blocks").find()) {
+            storedBytes = storedBytes + block.get("data", Binary.class).length();
+        }
+        System.out.println("write: " + (logicalBytes / 1024 / writeMillis) + "MB/s, ratio: " + ((double) logicalBytes / storedBytes));
+        for (ObjectId id : ids) {
+            dedupClient.delete(id).get();
+        }
+        dedupClient.close();
+    }
+
+    @Test
+    public void testReuse() throws Exception {
+        GridFsClient reuseClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .bucketName("reuse")
+                .reuse(true)
+                .build();
+        byte[] content = new byte[16 * 1024 * 1024];
+        new Random().nextBytes(content);
+        String md5 = new ObjectId().toHexString();
+
+        long start = System.currentTimeMillis();
+        ObjectId first = reuseClient.upload("asset.bin", md5, content.length, new Document(), content).get();
+        System.out.println("first upload: " + (System.currentTimeMillis() - start) + "ms");
+
+        List<ObjectId> ids = new ArrayList<>();
+        start = System.currentTimeMillis();
+        for (int i = 0; i < 100; i++) {
+            ids.add(reuseClient.upload("asset.bin", md5, content.length, new Document(), content).get());
+        }
+        System.out.println("re-upload avg: " + ((System.currentTimeMillis() - start) / 100.0) + "ms");
+
+        reuseClient.delete(first).get();
+        System.out.println("read after owner delete: " + Arrays.equals(content, reuseClient.download(ids.get(0)).get()));
+        for (ObjectId id : ids) {
+            reuseClient.delete(id).get();
+        }
+        System.out.println("chunks left: " + mongo.getDatabase("workplus").getCollection("reuse.chunks").count(new Document("files_id", first)));
+        reuseClient.close();
+    }
+
+    @Test
+    public void testExecutorLatency() throws Exception {
+        ObjectId id = new ObjectId("56d641b28314bfddf13bc45c");
+        ExecutorService executorService = Executors.newCachedThreadPool();
+        GridFsClient[] clients = {
+                GridFsClient.newBuilder().database(mongo.getDatabase("workplus")).maxThreads(8).build(),
+                GridFsClient.newBuilder().database(mongo.getDatabase("workplus")).executorService(executorService).build(),
+                GridFsClient.newBuilder().database(mongo.getDatabase("workplus")).maxThreads(8).virtualThreads(true).build()
+        };
+        String[] names = {"fixed", "supplied", "virtual"};
+        for (int c = 0; c < clients.length; c++) {
+            List<CompletableFuture<byte[]>> large = new ArrayList<>();
+            for (int i = 0; i < 64; i++) {
+                large.add(clients[c].download(id));
+            }
+
+            long[] latencies = new long[1000];
+            for (int i = 0; i < latencies.length; i++) {
+                long start = System.nanoTime();
+                clients[c].download(id, 0, 1024).get();
+                latencies[i] = System.nanoTime() - start;
+            }
+            CompletableFuture.allOf(large.toArray(new CompletableFuture<?>[large.size()])).get();
+            Arrays.sort(latencies);
+            System.out.println(names[c] + " small read p50: " + latencies[500] / 1000 + "us, p99: " + latencies[990] / 1000 + "us, p999: " + latencies[999] / 1000 + "us");
+            clients[c].close();
+        }
+        executorService.shutdown();
+    }
+
+    static class RandomInputStream extends InputStream {
+        private final Random random = new Random();
+        private long remaining;
+
+        RandomInputStream(long size) {
+            this.remaining = size;
+        }
+
+        @Override
+        public int read() {
+            if (remaining <= 0) {
+                return -1;
+            }
+            remaining--;
+            return random.nextInt(256);
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (remaining <= 0) {
+                return -1;
+            }
+            int size = (int) Math.min(len, remaining);
+            byte[] bytes = new byte[size];
+            random.nextBytes(bytes);
+            System.arraycopy(bytes, 0, b, off, size);
+            remaining = remaining - size;
+            return size;
+        }
+    }
+
+    @Test
+    public void testReadChannel() throws Exception {
+        byte[] content = new byte[64 * 1024 * 1024];
+        new Random().nextBytes(content);
+        ObjectId id = client.upload("channel.bin", "", content.length, new Document(), content).get();
+
+        byte[] buffer = new byte[64 * 1024];
+        for (int prefetch : new int[]{0, 4, 16}) {
+            long start = System.currentTimeMillis();
+            try (InputStream in = client.openStream(id, prefetch).get()) {
+                while (in.read(buffer) != -1) {
+                }
+            }
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("stream prefetch " + prefetch + ": " + (content.length / 1024 / millis) + "MB/s");
+        }
+
+        long start = System.currentTimeMillis();
+        for (long offset = 0; offset < content.length; offset = offset + buffer.length) {
+            client.download(id, offset, buffer.length).get();
+        }
+        long millis = Math.max(1, System.currentTimeMillis() - start);
+        System.out.println("range downloads: " + (content.length / 1024 / millis) + "MB/s");
+
+        Random random = new Random();
+        start = System.currentTimeMillis();
+        int seeks = 1000;
+        try (SeekableByteChannel channel = client.open(id, 4).get()) {
+            for (int i = 0; i < seeks; i++) {
+                channel.position(random.nextInt(content.length - buffer.length));
+                channel.read(ByteBuffer.wrap(buffer));
+            }
+        }
+        System.out.println("random seeks: " + (System.currentTimeMillis() - start) * 1000 / seeks + "us/seek");
+        client.delete(id).get();
+    }
+
+    @Test
+    public void testUploadStream() throws Exception {
+        byte[] buffer = new byte[64 * 1024];
+        Random random = new Random();
+
+        for (int window : new int[]{0, 4}) {
+            long start = System.currentTimeMillis();
+            GridFsUpload upload = client.openUpload("stream.bin", new Document(), window);
+            try (OutputStream out = upload) {
+                for (int i = 0; i < 1024; i++) {
+                    random.nextBytes(buffer);
+                    out.write(buffer, 0, random.nextInt(buffer.length));
+                }
+            }
+            GridFile gridFile = client.get(upload.id()).get();
+            long millis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("window: " + window + ", write: " + (gridFile.size() / 1024 / millis) + "MB/s, " + gridFile);
+            client.delete(upload.id()).get();
+        }
+
+        GridFsUpload aborted = client.openUpload("aborted.bin", new Document());
+        aborted.write(buffer);
+        aborted.abort();
+        System.out.println("aborted: " + client.get(aborted.id()).get());
+    }
+
+    @Test
+    public void testBatchGet() throws Exception {
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            ids.add(client.upload("batch-" + i + ".bin", "", 16, new Document(), new byte[16]).get());
+        }
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<GridFile>> futures = new ArrayList<>();
+        for (ObjectId id : ids) {
+            futures.add(client.get(id));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        System.out.println("single gets: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        Map<ObjectId, GridFile> files = client.get(ids).get();
+        System.out.println("batch get: " + (System.currentTimeMillis() - start) + "ms, files: " + files.size());
+
+        for (ObjectId id : ids) {
+            client.delete(id).get();
+        }
+    }
+
+    @Test
+    public void testBatchDelete() throws Exception {
+        List<ObjectId> ids = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            ids.add(client.upload("delete-" + i + ".bin", "", 1024, new Document(), new byte[1024]).get());
+        }
+
+        long start = System.currentTimeMillis();
+        for (ObjectId id : ids.subList(0, 1000)) {
+            client.delete(id).get();
+        }
+        System.out.println("single deletes: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        GridFsDeleteResult result = client.delete(ids.subList(1000, 2000)).get();
+        System.out.println("batch delete: " + (System.currentTimeMillis() - start) + "ms, " + result);
+    }
+
+    @Test
+    public void testBatchDownload() throws Exception {
+        List<ObjectId> ids = new ArrayList<>();
+        byte[] content = new byte[4 * 1024];
+        for (int i = 0; i < 500; i++) {
+            new Random().nextBytes(content);
+            ids.add(client.upload("icon-" + i + ".png", "", content.length, new Document(), content).get());
+        }
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+        for (ObjectId id : ids) {
+            futures.add(client.download(id));
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+        System.out.println("single downloads: " + (System.currentTimeMillis() - start) + "ms");
+
+        start = System.currentTimeMillis();
+        Map<ObjectId, byte[]> contents = client.download(ids).get();
+        System.out.println("batch download: " + (System.currentTimeMillis() - start) + "ms, files: " + contents.size());
+
+        client.delete(ids).get();
+    }
+
+    @Test
+    public void testSingleFlight() throws Exception {
+        byte[] content = new byte[4 * 1024 * 1024];
+        new Random().nextBytes(content);
+        ObjectId id = client.upload("viral.bin", "", content.length, new Document(), content).get();
+
+        for (boolean singleFlight : new boolean[]{false, true}) {
+            GridFsClient flightClient = GridFsClient.newBuilder()
+                    .database(mongo.getDatabase("workplus"))
+                    .singleFlight(singleFlight)
+                    .build();
+            long queries = queries();
+            List<CompletableFuture<byte[]>> futures = new ArrayList<>();
+            for (int i = 0; i < 200; i++) {
+                futures.add(flightClient.download(id));
+            }
+            CompletableFuture.allOf(futures.toArray(new CompletableFuture<?>[0])).get();
+            System.out.println("singleFlight: " + singleFlight + ", queries: " + (queries() - queries));
+            flightClient.close();
+        }
+        client.delete(id).get();
+    }
+
+    @Test
+    public void testInline() throws Exception {
+        byte[] content = new byte[4 * 1024];
+        new Random().nextBytes(content);
+
+        for (int inlineBytes : new int[]{0, 16 * 1024}) {
+            GridFsClient inlineClient = GridFsClient.newBuilder()
+                    .database(mongo.getDatabase("workplus"))
+                    .inlineBytes(inlineBytes)
+                    .build();
+            List<ObjectId> ids = new ArrayList<>();
+            long start = System.currentTimeMillis();
+            for (int i = 0; i < 1000; i++) {
+                ids.add(inlineClient.upload("avatar-" + i + ".png", "", content.length, new Document(), content).get());
+            }
+            long putMillis = Math.max(1, System.currentTimeMillis() - start);
+
+            start = System.currentTimeMillis();
+            for (ObjectId id : ids) {
+                inlineClient.download(id).get();
+            }
+            long getMillis = Math.max(1, System.currentTimeMillis() - start);
+            System.out.println("inlineBytes: " + inlineBytes + ", put: " + (ids.size() * 1000 / putMillis) + "ops/s, get: " + (ids.size() * 1000 / getMillis) + "ops/s");
+
+            inlineClient.delete(ids).get();
+            inlineClient.close();
+        }
+    }
+
+    @Test
+    public void testInlineCache() throws Exception {
+        GridFsClient inlineClient = GridFsClient.newBuilder()
+                .database(mongo.getDatabase("workplus"))
+                .inlineBytes(16 * 1024)
+                .cacheSize(1000)
+                .cacheTtl(0)
+                .build();
+        byte[] content = new byte[4 * 1024];
+        new Random().nextBytes(content);
+
+        int staleContent = 0;
+        int staleFiles = 0;
+        for (int i = 0; i < 100; i++) {
+            ObjectId id = inlineClient.upload("avatar.png", "", content.length, new Document(), content).get();
+            List<CompletableFuture<byte[]>> downloads = new ArrayList<>();
+            for (int j = 0; j < 8; j++) {
+                downloads.add(inlineClient.download(id));
+            }
+            CompletableFuture<Void> modify = inlineClient.modify(id, 0, new byte[]{(byte) i, 1, 2, 3});
+            for (int j = 0; j < 8; j++) {
+                downloads.add(inlineClient.download(id));
+            }
+            CompletableFuture.allOf(downloads.toArray(new CompletableFuture<?>[0])).get();
+            modify.get();
+            byte[] modified = inlineClient.download(id).get();
+            if (modified[0] != (byte) i || modified[3] != 3) {
+                staleContent++;
+            }
+
+            CompletableFuture<Void> delete = inlineClient.delete(id);
+            for (int j = 0; j < 8; j++) {
+                inlineClient.download(id).exceptionally(e -> null);
+            }
+            delete.get();
+            if (null != inlineClient.get(id).get()) {
+                staleFiles++;
+            }
+        }
+        System.out.println("stale inline downloads: " + staleContent + ", deleted inline files still cached: " + staleFiles);
+        inlineClient.close();
+    }
+
+    private long queries() {
+        Document opcounters = mongo.getDatabase("admin").runCommand(new Document("serverStatus", 1)).get("opcounters", Document.class);
+        return opcounters.get("query", Number.class).longValue() + opcounters.get("getmore", Number.class).longValue();
+    }
+
+    private long networkBytes() {
+        Document network = mongo.getDatabase("admin").runCommand(new Document("serverStatus", 1)).get("network", Document.class);
+        return network.get("bytesIn", Number.class).longValue() + network.get("bytesOut", Number.class).longValue();
+    }
+
+    private static long allocatedBytes() {
+        com.sun.management.ThreadMXBean threadMXBean = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = 0;
+        for (long bytes : threadMXBean.getThreadAllocatedBytes(threadMXBean.getAllThreadIds())) {
+            allocated = allocated + Math.max(bytes, 0);
+        }
+        return allocated;
+    }
+
     @After
     public void tearDown() throws Exception {
         client.close();